@@ -0,0 +1,86 @@
+package com.challengeandresponse.configfilereader.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.challengeandresponse.configfilereader.*;
+
+/**
+ * Cost of constructing a ConfigFileReader - parsing the file and compiling a section - for each SectionLoader,
+ * as the file grows in number of sections and in number of repeated elements.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar LoadBenchmark -prof gc
+ * java -jar benchmarks/target/benchmarks.jar LoadBenchmark -p clients=1000000 -p loader=streaming
+ * java -jar benchmarks/target/benchmarks.jar LoadBenchmark -p loader=dom,scanner -prof gc
+ * </pre>
+ *
+ * @author jim
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class LoadBenchmark {
+
+	@Param({"10", "200"})
+	public int sections;
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int clients;
+
+	@Param({"dom", "streaming", "scanner", "image", "cache"})
+	public String loader;
+
+	private File configFile;
+	private SectionLoader sectionLoader;
+
+	@Setup(Level.Trial)
+	public void setup()
+	throws Exception {
+		configFile = SyntheticConfig.write(sections, 50, clients, 100);
+		sectionLoader = loader(loader, configFile);
+	}
+
+	static SectionLoader loader(String name, File configFile)
+	throws Exception {
+		if ("dom".equals(name))
+			return new DOMSectionLoader();
+		if ("streaming".equals(name))
+			return new StreamingSectionLoader();
+		if ("scanner".equals(name))
+			return new ScanningSectionLoader();
+		if ("image".equals(name)) {
+			File image = new File(configFile.getPath()+".cfri");
+			image.deleteOnExit();
+			ConfigImageCompiler.compile(configFile, image);
+			return new ImageSectionLoader(image);
+		}
+		if ("cache".equals(name))
+			return new ConfigCache(ConfigCache.DEFAULT_BUDGET * 16);
+		throw new IllegalArgumentException("unknown loader: "+name);
+	}
+
+	/**
+	 * A small section; everything else in the file is overhead
+	 */
+	@Benchmark
+	public ConfigFileReader loadWideSection()
+	throws Exception {
+		return new ConfigFileReader(configFile, SyntheticConfig.WIDE, sectionLoader);
+	}
+
+	/**
+	 * The section holding all of the repeated &lt;client&gt; entries
+	 */
+	@Benchmark
+	public ConfigFileReader loadClientsSection()
+	throws Exception {
+		return new ConfigFileReader(configFile, SyntheticConfig.CLIENTS, sectionLoader);
+	}
+
+}
@@ -0,0 +1,179 @@
+package com.challengeandresponse.configfilereader.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.challengeandresponse.configfilereader.*;
+
+/**
+ * Cost of reading values from an already-constructed ConfigFileReader: single-valued gets (hits and misses,
+ * with and without useDefault), the repeated-element methods getList/getMap/getMaps, and stepInto iteration.
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar LookupBenchmark -prof gc
+ * </pre>
+ *
+ * @author jim
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class LookupBenchmark {
+
+	@Param({"10", "100", "1000"})
+	public int width;
+
+	@Param({"1000", "100000"})
+	public int clients;
+
+	private ConfigFileReader wide;
+	private ConfigFileReader clientsReader;
+	private ConfigFileReader people;
+	private String hitName;
+	private String clientId;
+
+	@Setup(Level.Trial)
+	public void setup()
+	throws Exception {
+		File f = SyntheticConfig.write(10, width, clients, 1000);
+		ConfigCache cache = new ConfigCache(ConfigCache.DEFAULT_BUDGET * 16);
+		wide = new ConfigFileReader(f, SyntheticConfig.WIDE, cache);
+		clientsReader = new ConfigFileReader(f, SyntheticConfig.CLIENTS, cache);
+		people = new ConfigFileReader(f, SyntheticConfig.PEOPLE, cache);
+		hitName = "element"+(width / 2);
+		clientId = "c"+(clients / 2);
+	}
+
+
+	@Benchmark
+	public int getIntHit()
+	throws Exception {
+		return wide.getInt(hitName);
+	}
+
+	@Benchmark
+	public int getIntMissDefault()
+	throws Exception {
+		return wide.getInt(-1, true, "nosuchelement");
+	}
+
+	@Benchmark
+	public int getIntMissThrows() {
+		try {
+			return wide.getInt("nosuchelement");
+		}
+		catch (ConfigFileReaderException e) {
+			return -1;
+		}
+	}
+
+	@Benchmark
+	public int getIntOrDefaultMiss() {
+		return wide.getIntOrDefault("nosuchelement", -1);
+	}
+
+	@Benchmark
+	public long getLongHit()
+	throws Exception {
+		return wide.getLong("big");
+	}
+
+	@Benchmark
+	public boolean getBooleanHit()
+	throws Exception {
+		return wide.getBoolean("flag");
+	}
+
+	@Benchmark
+	public String getStringHit()
+	throws Exception {
+		return wide.getString("name");
+	}
+
+	@Benchmark
+	public String getStringMissDefault()
+	throws Exception {
+		return wide.getString("", true, "nosuchelement");
+	}
+
+	@Benchmark
+	public String getStringMissThrows() {
+		try {
+			return wide.getString("nosuchelement");
+		}
+		catch (ConfigFileReaderException e) {
+			return null;
+		}
+	}
+
+
+	@Benchmark
+	public Object getList()
+	throws Exception {
+		return clientsReader.getList("client");
+	}
+
+	@Benchmark
+	public Object getMap()
+	throws Exception {
+		return clientsReader.getMap("client", "id", true);
+	}
+
+	@Benchmark
+	public Object getMaps()
+	throws Exception {
+		return clientsReader.getMaps("client");
+	}
+
+	@Benchmark
+	public int forEachClient() {
+		final int[] total = new int[1];
+		clientsReader.forEach("client", new ElementVisitor() {
+			public boolean visit(ConfigEntry e) {
+				total[0] += e.getText().length();
+				return true;
+			}
+		});
+		return total[0];
+	}
+
+	@Benchmark
+	public Object findClientById() {
+		return clientsReader.findByAttribute("client", "id", clientId);
+	}
+
+
+	/**
+	 * The documented stepInto/hasNext/stepToNext loop, reading two values from each of 1000 records
+	 */
+	@Benchmark
+	public void stepIntoPeople(Blackhole bh)
+	throws Exception {
+		people.stepInto("subsection");
+		while (people.hasNext()) {
+			people.stepToNext();
+			bh.consume(people.getString("name"));
+			bh.consume(people.getInt("age"));
+		}
+		people.stepInto(null);
+	}
+
+	/**
+	 * The same walk through thread-safe SectionViews
+	 */
+	@Benchmark
+	public void sectionViewPeople(Blackhole bh)
+	throws Exception {
+		for (SectionView sub : people.getView().stepInto("subsection")) {
+			bh.consume(sub.getString("name"));
+			bh.consume(sub.getInt("age"));
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.challengeandresponse.configfilereader.benchmarks;
+
+import java.io.*;
+
+/**
+ * Writes synthetic config files for the benchmarks, in the same dialect as config.xml:
+ * <pre>
+ * &lt;config&gt;
+ *	&lt;filler0&gt; ... &lt;/filler0&gt;	many sections that the benchmarks never read
+ *	&lt;wide&gt;			one section with many single-valued elements: element0..elementN (ints), flag, name
+ *	&lt;clients&gt;		one section with many repeated &lt;client id=".." car=".." group=".."&gt;secret&lt;/client&gt; entries
+ *	&lt;people&gt;		&lt;subsection&gt;&lt;name/&gt;&lt;age/&gt;&lt;/subsection&gt; records, for stepInto()
+ * &lt;/config&gt;
+ * </pre>
+ *
+ * @author jim
+ */
+public class SyntheticConfig {
+
+	public static final String WIDE = "wide";
+	public static final String CLIENTS = "clients";
+	public static final String PEOPLE = "people";
+
+	private static final String[] CARS = {"Honda", "Buick", "station wagon", "Volvo", "Saab"};
+
+	/**
+	 * @param sections the number of filler sections
+	 * @param width the number of elements in the "wide" section (and in each filler section)
+	 * @param clients the number of &lt;client&gt; entries in the "clients" section
+	 * @param people the number of &lt;subsection&gt; records in the "people" section
+	 * @return a temporary file holding the config, deleted when the JVM exits
+	 */
+	public static File write(int sections, int width, int clients, int people)
+	throws IOException {
+		File f = File.createTempFile("cfr-bench-", ".xml");
+		f.deleteOnExit();
+		Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), "UTF-8"), 1 << 16);
+		try {
+			w.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<config>\n");
+			// put half the filler before the sections we read, half after
+			for (int s = 0; s < sections / 2; s++)
+				writeFiller(w, s, width);
+
+			w.write("<"+WIDE+">\n");
+			for (int i = 0; i < width; i++)
+				w.write("\t<element"+i+">"+i+"</element"+i+">\n");
+			w.write("\t<flag>true</flag>\n\t<name>synthetic</name>\n\t<big>9000000000</big>\n");
+			w.write("</"+WIDE+">\n");
+
+			w.write("<"+CLIENTS+">\n");
+			for (int i = 0; i < clients; i++)
+				w.write("\t<client id=\"c"+i+"\" car=\""+CARS[i % CARS.length]+"\" group=\"g"+(i % 100)+"\">secret"+i+"</client>\n");
+			w.write("</"+CLIENTS+">\n");
+
+			w.write("<"+PEOPLE+">\n");
+			for (int i = 0; i < people; i++)
+				w.write("\t<subsection>\n\t\t<name>person"+i+"</name>\n\t\t<age>"+(20 + i % 60)+"</age>\n\t</subsection>\n");
+			w.write("</"+PEOPLE+">\n");
+
+			for (int s = sections / 2; s < sections; s++)
+				writeFiller(w, s, width);
+			w.write("</config>\n");
+		}
+		finally {
+			w.close();
+		}
+		return f;
+	}
+
+	private static void writeFiller(Writer w, int s, int width)
+	throws IOException {
+		w.write("<filler"+s+">\n");
+		for (int i = 0; i < width; i++)
+			w.write("\t<element"+i+" note=\"filler\">value "+s+"."+i+"</element"+i+">\n");
+		w.write("</filler"+s+">\n");
+	}
+
+}
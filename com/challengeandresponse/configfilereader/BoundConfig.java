@@ -0,0 +1,146 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.*;
+
+/**
+ * The values of a set of ConfigKeys, resolved against a section. Reads are array loads, with no element names
+ * involved; the keys must come from the ConfigKeys this was bound from.
+ *
+ * <p>All of the values are held in one immutable Values object which is replaced whole on a reload, so a
+ * reader never waits and never sees values from two different versions of the file in one Values. The exception
+ * is a holder from ConfigKeys.newHolder(), which fetch() refills in place and so belongs to one thread at a time.</p>
+ *
+ * @see ConfigKeys#bind(ConfigFileReader)
+ * @author jim
+ */
+public final class BoundConfig
+implements ReloadListener {
+
+	static final class Values {
+		final int[] ints;
+		final long[] longs;
+		final boolean[] booleans;
+		final String[] strings;
+		final ArrayList <String> problems = new ArrayList <String> (0);	// keys that were missing or unreadable
+
+		Values(int ints, int longs, int booleans, int strings) {
+			this.ints = new int[ints];
+			this.longs = new long[longs];
+			this.booleans = new boolean[booleans];
+			this.strings = new String[strings];
+		}
+	}
+
+	private final ConfigKeys keys;
+	private final boolean holder;	// true if made by newHolder(), to be refilled in place by fetch()
+	private volatile Values values;
+	private volatile ConfigFileReader reader = null;	// the reader this follows, until unbind()
+
+
+	BoundConfig(ConfigKeys keys, Values values) {
+		this(keys, values, false);
+	}
+
+	BoundConfig(ConfigKeys keys, Values values, boolean holder) {
+		this.keys = keys;
+		this.values = values;
+		this.holder = holder;
+	}
+
+
+	public int getInt(ConfigKey<Integer> key) {
+		check(key);
+		return values.ints[key.slot];
+	}
+
+	public long getLong(ConfigKey<Long> key) {
+		check(key);
+		return values.longs[key.slot];
+	}
+
+	public boolean getBoolean(ConfigKey<Boolean> key) {
+		check(key);
+		return values.booleans[key.slot];
+	}
+
+	public String getString(ConfigKey<String> key) {
+		check(key);
+		return values.strings[key.slot];
+	}
+
+	/**
+	 * Boxed read of any key. Prefer the typed getters on hot paths.
+	 */
+	public <T> T get(ConfigKey<T> key) {
+		check(key);
+		Values v = values;
+		Object o;
+		if (key.type == Integer.class)
+			o = Integer.valueOf(v.ints[key.slot]);
+		else if (key.type == Long.class)
+			o = Long.valueOf(v.longs[key.slot]);
+		else if (key.type == Boolean.class)
+			o = Boolean.valueOf(v.booleans[key.slot]);
+		else
+			o = v.strings[key.slot];
+		return key.type.cast(o);
+	}
+
+	/**
+	 * @return a message for each key that was missing from the section, or whose text could not be read
+	 * as its type, when the values were last resolved. Those keys hold their defaults. Empty if there were none.
+	 * The list is a copy, so a later fetch() into a holder doesn't change it.
+	 */
+	public List<String> getProblems() {
+		List <String> problems = values.problems;
+		if (problems.isEmpty())
+			return Collections.emptyList();
+		return Collections.unmodifiableList(new ArrayList <String> (problems));
+	}
+
+	public boolean hasProblems() {
+		return ! values.problems.isEmpty();
+	}
+
+	boolean isHolder() {
+		return holder;
+	}
+
+	ConfigKeys getKeys() {
+		return keys;
+	}
+
+	Values values() {
+		return values;
+	}
+
+	private void check(ConfigKey<?> key) {
+		if (key.owner != keys)
+			throw new IllegalArgumentException("BoundConfig: "+key+" was not declared by the ConfigKeys this was bound from");
+	}
+
+
+	/**
+	 * Stop following the reader this was bound to, so it is no longer updated on reloads and can be garbage
+	 * collected. The values it has are kept. Does nothing if this isn't bound to a reader, or already unbound.
+	 */
+	public void unbind() {
+		ConfigFileReader cfr = reader;
+		reader = null;
+		if (cfr != null)
+			cfr.removeReloadListener(this);
+	}
+
+	void follow(ConfigFileReader cfr) {
+		reader = cfr;
+		cfr.addReloadListener(this);
+	}
+
+	/**
+	 * Resolve the keys against the reloaded section and switch to the new values
+	 */
+	public void reloaded(ConfigFileReader cfr, SectionSnapshot oldSection, SectionSnapshot newSection) {
+		values = keys.resolve(newSection);
+	}
+
+}
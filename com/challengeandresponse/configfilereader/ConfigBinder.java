@@ -0,0 +1,205 @@
+package com.challengeandresponse.configfilereader;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+/**
+ * The plan for filling in one record or POJO class from a section, worked out once per class and then reused.
+ *
+ * <p>For a record, the values are read in component order and passed to the canonical constructor. For any other
+ * class, the no-argument constructor is called and then each non-static, non-final, non-transient field (including
+ * inherited ones) is set. The constructor and setters are MethodHandles, found once when the plan is made, so binding
+ * does no reflective lookups. Each value is one hash lookup into the section's compiled snapshot, with numbers already
+ * parsed.</p>
+ *
+ * <p>Supported field types are int, long, boolean, their wrappers, String, and List&lt;String&gt; (the text of every
+ * element with that name, as getList() returns it; an empty list if there are none).</p>
+ *
+ * @author jim
+ */
+final class ConfigBinder<T> {
+
+	private static final byte INT = 0;
+	private static final byte LONG = 1;
+	private static final byte BOOLEAN = 2;
+	private static final byte STRING = 3;
+	private static final byte LIST = 4;
+
+	private static final ClassValue <ConfigBinder<?>> PLANS = new ClassValue <ConfigBinder<?>> () {
+		protected ConfigBinder<?> computeValue(Class<?> type) {
+			return new ConfigBinder<Object>(type);
+		}
+	};
+
+	private final Class<?> type;
+	private final String[] elementNames;
+	private final byte[] kinds;
+	private final boolean[] required;
+	private final Object[] defaults;
+	private final MethodHandle constructor;	// records: (Object[])Object. Others: ()Object
+	private final MethodHandle[] setters;	// (Object,Object)void per field, or null for records
+
+
+	@SuppressWarnings("unchecked")
+	static <T> ConfigBinder<T> of(Class<T> type) {
+		return (ConfigBinder<T>) PLANS.get(type);
+	}
+
+	private ConfigBinder(Class<?> type) {
+		this.type = type;
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+			ArrayList <AnnotatedElement> members = new ArrayList <AnnotatedElement> ();
+			ArrayList <String> names = new ArrayList <String> ();
+			ArrayList <Type> types = new ArrayList <Type> ();
+			if (type.isRecord()) {
+				RecordComponent[] rcs = type.getRecordComponents();
+				Class<?>[] parameterTypes = new Class<?>[rcs.length];
+				for (int i = 0; i < rcs.length; i++) {
+					members.add(rcs[i]);
+					names.add(rcs[i].getName());
+					types.add(rcs[i].getGenericType());
+					parameterTypes[i] = rcs[i].getType();
+				}
+				constructor = lookup.findConstructor(type, MethodType.methodType(void.class, parameterTypes))
+						.asSpreader(Object[].class, rcs.length)
+						.asType(MethodType.methodType(Object.class, Object[].class));
+				setters = null;
+			}
+			else {
+				ArrayList <MethodHandle> s = new ArrayList <MethodHandle> ();
+				ArrayList <Class<?>> hierarchy = new ArrayList <Class<?>> ();
+				for (Class<?> c = type; (c != null) && (c != Object.class); c = c.getSuperclass())
+					hierarchy.add(0, c);
+				for (Class<?> c : hierarchy) {
+					MethodHandles.Lookup l = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+					for (Field f : c.getDeclaredFields()) {
+						int m = f.getModifiers();
+						if (Modifier.isStatic(m) || Modifier.isFinal(m) || Modifier.isTransient(m) || f.isSynthetic())
+							continue;
+						members.add(f);
+						names.add(f.getName());
+						types.add(f.getGenericType());
+						s.add(l.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, Object.class)));
+					}
+				}
+				constructor = lookup.findConstructor(type, MethodType.methodType(void.class)).asType(MethodType.methodType(Object.class));
+				setters = s.toArray(new MethodHandle[s.size()]);
+			}
+
+			int n = members.size();
+			elementNames = new String[n];
+			kinds = new byte[n];
+			required = new boolean[n];
+			defaults = new Object[n];
+			for (int i = 0; i < n; i++) {
+				ConfigField cf = members.get(i).getAnnotation(ConfigField.class);
+				elementNames[i] = ((cf == null) || cf.name().isEmpty()) ? names.get(i) : cf.name();
+				kinds[i] = kindOf(types.get(i), names.get(i));
+				required[i] = (cf == null) || cf.required();
+				defaults[i] = defaultOf(types.get(i), kinds[i], (cf == null) ? "" : cf.defaultValue());
+			}
+		}
+		catch (ReflectiveOperationException | NumberFormatException e) {
+			throw new IllegalArgumentException("ConfigFileReader:Cannot bind to "+type.getName()+": "+e, e);
+		}
+	}
+
+	private byte kindOf(Type t, String fieldName) {
+		if ((t == int.class) || (t == Integer.class))
+			return INT;
+		if ((t == long.class) || (t == Long.class))
+			return LONG;
+		if ((t == boolean.class) || (t == Boolean.class))
+			return BOOLEAN;
+		if (t == String.class)
+			return STRING;
+		if ((t instanceof ParameterizedType) && (((ParameterizedType) t).getRawType() == List.class)
+				&& (((ParameterizedType) t).getActualTypeArguments()[0] == String.class))
+			return LIST;
+		throw new IllegalArgumentException("ConfigFileReader:Cannot bind to "+type.getName()+": field '"+fieldName+"' has unsupported type "+t);
+	}
+
+	private static Object defaultOf(Type t, byte kind, String defaultValue) {
+		boolean primitive = (t instanceof Class) && ((Class<?>) t).isPrimitive();
+		if (defaultValue.isEmpty() && (! primitive))
+			return (kind == LIST) ? Collections.<String>emptyList() : null;
+		switch (kind) {
+			case INT: return Integer.valueOf(defaultValue.isEmpty() ? 0 : Integer.parseInt(defaultValue));
+			case LONG: return Long.valueOf(defaultValue.isEmpty() ? 0L : Long.parseLong(defaultValue));
+			case BOOLEAN: return Boolean.valueOf(Boolean.parseBoolean(defaultValue));
+			default: return defaultValue;
+		}
+	}
+
+
+	/**
+	 * @return a new instance of the class, filled in from the section
+	 * @throws ConfigFileReaderException if a required element is missing or unreadable, or the constructor fails
+	 */
+	@SuppressWarnings("unchecked")
+	T bind(SectionSnapshot se)
+	throws ConfigFileReaderException {
+		try {
+			if (setters == null) {
+				Object[] values = new Object[kinds.length];
+				for (int i = 0; i < values.length; i++)
+					values[i] = value(se, i);
+				return (T) constructor.invokeExact(values);
+			}
+			Object o = (Object) constructor.invokeExact();
+			for (int i = 0; i < setters.length; i++)
+				setters[i].invokeExact(o, value(se, i));
+			return (T) o;
+		}
+		catch (ConfigFileReaderException | RuntimeException | Error e) {
+			throw e;
+		}
+		catch (Throwable t) {
+			throw new ConfigFileReaderException("ConfigFileReader:Exception binding "+se+" to "+type.getName()+": "+t, t);
+		}
+	}
+
+	private Object value(SectionSnapshot se, int i)
+	throws ConfigFileReaderException {
+		String elementName = elementNames[i];
+		if (kinds[i] == LIST) {
+			int n = se.countOf(elementName);
+			if (ConfigMetrics.enabled)
+				ConfigMetrics.getInstance().read(se.getName(), elementName, n > 0);
+			if (n == 0)
+				return defaults[i];
+			String[] texts = new String[n];
+			for (int j = 0; j < n; j++)
+				texts[j] = se.textAt(se.slotOf(elementName, j));
+			return Collections.unmodifiableList(Arrays.asList(texts));
+		}
+
+		int slot = se.slotOf(elementName);
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().read(se.getName(), elementName, slot >= 0);
+		if (slot >= 0) {
+			switch (kinds[i]) {
+				case INT:
+					if (se.isInt(slot))
+						return Integer.valueOf(se.intAt(slot));
+					break;
+				case LONG:
+					if (se.isLong(slot))
+						return Long.valueOf(se.longAt(slot));
+					break;
+				case BOOLEAN:
+					return Boolean.valueOf(se.booleanAt(slot));
+				default:
+					return se.textAt(slot);
+			}
+		}
+		if (required[i])
+			throw new ConfigFileReaderException("ConfigFileReader:Exception binding "+type.getName()+" from config file: "+SectionView.describeFailure(se,slot,elementName,kinds[i] == LONG));
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().defaulted(slot >= 0);
+		return defaults[i];
+	}
+
+}
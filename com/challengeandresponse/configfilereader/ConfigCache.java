@@ -0,0 +1,250 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A process-wide cache of compiled config files, so that many readers on the same file share one parse.
+ *
+ * <p>Each file is parsed once, whole, and its compiled root element is kept. Any section of it can then be handed to a
+ * ConfigFileReader without touching the disk again. Entries are keyed by the file's canonical path, and are only used
+ * while the file's modification time and size still match what was loaded, so an edited file is reparsed.</p>
+ *
+ * <p>The cache is bounded by an approximate memory budget (see SectionSnapshot.weight()). When the budget is exceeded,
+ * the least recently used files are evicted. If several threads ask for the same file at once, only one of them parses
+ * it and the others wait for that result.</p>
+ *
+ * <pre>
+ * ConfigFileReader cfr1 = new ConfigFileReader(f,"section1",ConfigCache.getShared());
+ * ConfigFileReader cfr3 = new ConfigFileReader(f,"section3",ConfigCache.getShared()); // no reparse
+ * </pre>
+ *
+ * @author jim
+ */
+public class ConfigCache
+implements SectionLoader {
+
+	/**
+	 * System property to set the memory budget, in bytes, of the shared cache
+	 */
+	public static final String SHARED_BUDGET_PROPERTY = "com.challengeandresponse.configfilereader.cacheBytes";
+	public static final long DEFAULT_BUDGET = 64L * 1024L * 1024L;
+
+	private static final ConfigCache SHARED = new ConfigCache(Long.getLong(SHARED_BUDGET_PROPERTY, DEFAULT_BUDGET).longValue());
+
+	private static final class Entry {
+		final long lastModified;
+		final long length;
+		final SectionSnapshot document;
+
+		Entry(long lastModified, long length, SectionSnapshot document) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.document = document;
+		}
+	}
+
+	private final DOMSectionLoader parser = new DOMSectionLoader();
+	private final long maxWeight;
+
+	// guarded by itself
+	private final LinkedHashMap <String,Entry> entries = new LinkedHashMap <String,Entry> (16, 0.75f, true);
+	private long weight = 0;
+
+	// loads in progress, so concurrent requests for the same file share one parse
+	private final ConcurrentHashMap <String,FutureTask<Entry>> loading = new ConcurrentHashMap <String,FutureTask<Entry>> ();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong joins = new AtomicLong();
+
+
+	/**
+	 * @param maxWeight the memory budget for this cache, in (approximate) bytes
+	 */
+	public ConfigCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * @return the cache shared by the whole process. Its budget is set by the system property SHARED_BUDGET_PROPERTY
+	 */
+	public static ConfigCache getShared() {
+		return SHARED;
+	}
+
+
+	public SectionSnapshot load(File configFile, String sectionName)
+	throws IOException, ElementNotFoundException {
+		return DOMSectionLoader.section(getDocument(configFile), sectionName);
+	}
+
+	/**
+	 * @return the compiled root element of the file, from the cache if the file is unchanged since it was cached
+	 */
+	public SectionSnapshot getDocument(File configFile)
+	throws IOException {
+		final File f = configFile.getCanonicalFile();
+		final String path = f.getPath();
+		final long lastModified = f.lastModified();
+		final long length = f.length();
+
+		Entry cached = cached(path, lastModified, length);
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached.document;
+		}
+
+		// the task always runs to completion, so threads that picked it up from loading are never left waiting
+		FutureTask <Entry> task = new FutureTask <Entry> (new Callable<Entry>() {
+			public Entry call()
+			throws IOException {
+				// another thread may have finished loading between our lookup and claiming the load
+				Entry e = cached(path, lastModified, length);
+				if (e != null) {
+					hits.incrementAndGet();
+					return e;
+				}
+				misses.incrementAndGet();
+				e = new Entry(lastModified, length, parser.loadDocument(f));
+				put(path, e);
+				return e;
+			}
+		});
+		FutureTask <Entry> inProgress = loading.putIfAbsent(path, task);
+		if (inProgress == null) {
+			try {
+				task.run();
+			}
+			finally {
+				loading.remove(path, task);
+			}
+		}
+		else {
+			// someone else is already loading this file
+			joins.incrementAndGet();
+			task = inProgress;
+		}
+		Entry e = get(task);
+		if ((e.lastModified != lastModified) || (e.length != length))
+			return getDocument(configFile);
+		return e.document;
+	}
+
+	/**
+	 * @return the cached entry for the path if it is still current, else null
+	 */
+	private Entry cached(String path, long lastModified, long length) {
+		synchronized (entries) {
+			Entry e = entries.get(path);
+			if ((e != null) && (e.lastModified == lastModified) && (e.length == length))
+				return e;
+			return null;
+		}
+	}
+
+	private static Entry get(FutureTask<Entry> task)
+	throws IOException {
+		try {
+			return task.get();
+		}
+		catch (ExecutionException ee) {
+			if (ee.getCause() instanceof IOException)
+				throw (IOException) ee.getCause();
+			throw new IOException("ConfigFileReader:Exception loading configuration: "+ee.getCause(), ee.getCause());
+		}
+		catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+			throw new IOException("ConfigFileReader:Interrupted waiting for configuration to load");
+		}
+	}
+
+	private void put(String path, Entry e) {
+		synchronized (entries) {
+			Entry old = entries.put(path, e);
+			if (old != null)
+				weight -= old.document.weight();
+			weight += e.document.weight();
+			// evict least recently used, but always keep the entry just added
+			Iterator <Map.Entry<String,Entry>> it = entries.entrySet().iterator();
+			while ((weight > maxWeight) && (entries.size() > 1)) {
+				Map.Entry <String,Entry> eldest = it.next();
+				weight -= eldest.getValue().document.weight();
+				it.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+
+	/**
+	 * Drop the cached copy of one file, if there is one
+	 */
+	public void invalidate(File configFile)
+	throws IOException {
+		synchronized (entries) {
+			Entry old = entries.remove(configFile.getCanonicalPath());
+			if (old != null)
+				weight -= old.document.weight();
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (entries) {
+			entries.clear();
+			weight = 0;
+		}
+	}
+
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return the number of loads that waited for another thread's load of the same file rather than
+	 * starting their own. These are counted as neither hits nor misses
+	 */
+	public long getJoinCount() {
+		return joins.get();
+	}
+
+	/**
+	 * @return the approximate number of bytes held by the cache now
+	 */
+	public long getWeight() {
+		synchronized (entries) {
+			return weight;
+		}
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * @return the number of files in the cache
+	 */
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	public String toString() {
+		return "ConfigCache: files:"+size()+" weight:"+getWeight()+"/"+maxWeight+" hits:"+hits.get()+" misses:"+misses.get()+" joins:"+joins.get()+" evictions:"+evictions.get();
+	}
+
+}
@@ -0,0 +1,29 @@
+package com.challengeandresponse.configfilereader;
+
+/**
+ * One element of a config file as seen while iterating over repeated elements: its name, its text and its attributes.
+ *
+ * <p>Entries handed to an ElementVisitor may be flyweights that are reused for the next element, so copy out
+ * anything that must outlive the visit() call.</p>
+ *
+ * @see ElementVisitor
+ * @author jim
+ */
+public interface ConfigEntry {
+
+	public String getName();
+
+	public String getText();
+
+	public int attributeCount();
+
+	public String attributeName(int i);
+
+	public String attributeValue(int i);
+
+	/**
+	 * @return the value of the named attribute, or null if there is no such attribute
+	 */
+	public String getAttributeValue(String attributeName);
+
+}
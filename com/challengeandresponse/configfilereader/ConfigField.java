@@ -0,0 +1,37 @@
+package com.challengeandresponse.configfilereader;
+
+import java.lang.annotation.*;
+
+/**
+ * How a field or record component is filled in by bind(Class). Unannotated fields are required, and are read from
+ * the element with the same name as the field.
+ *
+ * <pre>
+ * record Person(String name, @ConfigField(required=false, defaultValue="21") int age) {}
+ * </pre>
+ *
+ * @see ConfigFileReader#bind(Class)
+ * @author jim
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.RECORD_COMPONENT})
+public @interface ConfigField {
+
+	/**
+	 * @return the name of the element to read, if not the same as the field's name
+	 */
+	String name() default "";
+
+	/**
+	 * @return true if a missing or unreadable element is an error, as for getInt(elementName);
+	 * false to use defaultValue instead, as for getIntOrDefault(elementName, defaultValue)
+	 */
+	boolean required() default true;
+
+	/**
+	 * @return the value to use when the element is missing or unreadable and required is false, written as it would
+	 * be in the config file. If empty, the default is 0 or false for primitives, and null for everything else.
+	 */
+	String defaultValue() default "";
+
+}
@@ -3,9 +3,8 @@ package com.challengeandresponse.configfilereader;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-
-import org.jdom.*;
-import org.jdom.input.SAXBuilder;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
 
 /**
  * Read an XML configuration file and populate a key,value mapped data structure with the contents.
@@ -22,6 +21,16 @@ import org.jdom.input.SAXBuilder;
  * </pre>
  * 
  * <p>This depends on the JDOM library.</p>
+ * <p>The section is compiled into an immutable {@link SectionSnapshot} when the reader is constructed, and the DOM
+ * is then discarded. The get___ calls are answered from the snapshot: a hash lookup by element name, with numbers
+ * and booleans already parsed.</p>
+ * <p>How the section is read from the file is up to a {@link SectionLoader}. The default builds a JDOM Document
+ * of the whole file; a {@link StreamingSectionLoader} streams past the other sections without building them.</p>
+ * <p>A reader can be refreshed from its file with reload(), or automatically by a {@link ConfigFileWatcher}. Listeners
+ * can be told exactly which elements a reload changed, as a {@link SectionDiff}.</p>
+ * <p>Reads, misses, defaults and load times can be counted by {@link ConfigMetrics}, which is off unless enabled.</p>
+ * <p>Nested elements can be read without stepping by giving a path in place of an element name, e.g.
+ * getInt("subsection[name='zach']/age") or getList("client/@id"). See {@link ConfigPath}.</p>
  * <p>This package handles the file io, DOM navigation, and error-catching.
  * Callers just init a data structure to hold the results, then make repeated calls to fetch each configuration item by name.
  *</p>
@@ -103,29 +112,184 @@ public class ConfigFileReader {
 
 	public static final String ROOT_ELEMENT = "config";
 
-	private Document doc;
-	private Element rootE;
+	private final File configFile;
+	private final SectionLoader loader;
+
+	private volatile SectionSnapshot section;	// the compiled root section. Replaced whole, never modified, by reload()
+	private SectionSnapshot rootE;		// the element being stepped through, or null when reading the root section
 	private String rootSectionName;
 	
-	private Iterator <Element> stepper = null; // when stepping thru secondary elements
-		/**
+	private final List <ReloadListener> reloadListeners = new CopyOnWriteArrayList <ReloadListener> ();
+	private volatile List <RuntimeException> listenerFailures = Collections.emptyList();	// from the last reload() that changed the section
+	private final List <String[]> declaredIndexes = new CopyOnWriteArrayList <String[]> (); // (elementName, attributeName) pairs
+	private final List <ChangeRegistration> changeListeners = new CopyOnWriteArrayList <ChangeRegistration> ();
+
+	private static final class ChangeRegistration {
+		final String elementName;	// null for any change to the section
+		final SectionChangeListener listener;
+
+		ChangeRegistration(String elementName, SectionChangeListener listener) {
+			this.elementName = elementName;
+			this.listener = listener;
+		}
+	}
+
+	private SectionSnapshot[] stepper = null; // when stepping thru secondary elements
+	private int stepperPos;
+
+	/**
 	 * @param configFile a File pointing to the configuration file to process
 	 * @param sectionName the name of the node that contains all the config data
 	 */
 	public ConfigFileReader(File configFile, String sectionName)
 	throws IOException, ElementNotFoundException {
-		SAXBuilder saxb = new SAXBuilder();
+		this(configFile, sectionName, new DOMSectionLoader());
+	}
+
+	/**
+	 * @param configFile a File pointing to the configuration file to process
+	 * @param sectionName the name of the node that contains all the config data
+	 * @param loader how the section is to be read from the file, e.g. a StreamingSectionLoader to skip the other sections instead of building a DOM of the whole file
+	 */
+	public ConfigFileReader(File configFile, String sectionName, SectionLoader loader)
+	throws IOException, ElementNotFoundException {
+		this.configFile = configFile;
+		this.loader = loader;
+		this.rootSectionName = sectionName;
+		this.section = load();
+		setRootElement(null);
+	}
+
+	/**
+	 * loader.load() of this reader's section, timed by ConfigMetrics when metrics are on
+	 */
+	private SectionSnapshot load()
+	throws IOException, ElementNotFoundException {
+		if (! ConfigMetrics.enabled)
+			return loader.load(configFile, rootSectionName);
+		long start = System.nanoTime();
 		try {
-			doc = saxb.build(configFile);
-			this.rootSectionName = sectionName;
-			setRootElement(null);
+			SectionSnapshot s = loader.load(configFile, rootSectionName);
+			ConfigMetrics.getInstance().loaded(configFile, rootSectionName, System.nanoTime() - start);
+			return s;
+		}
+		catch (IOException | ElementNotFoundException e) {
+			ConfigMetrics.getInstance().loadFailed();
+			throw e;
 		}
-		catch (JDOMException jdoe) {
-			throw new IOException("ConfigFileReader:DOM exception building configuration from file: "+configFile+" " + jdoe.getMessage());
+	}
+
+
+	/**
+	 * Read the section from the config file again, and if it is still there, switch this reader over to it.
+	 * The new section is built completely before it is published with a single reference swap, so other threads
+	 * calling get___ at the same time see either the old section or the new one, never a mix, and never wait.
+	 * If the file can't be read or the section has gone, the reader keeps the section it has and the exception is thrown.
+	 * <p>A stepInto() in progress carries on over the elements of the old section.</p>
+	 * <p>If the section's content is the same as before (e.g. only other sections of the file were edited), the reader
+	 * keeps its current section, with any indexes already built on it, and no listeners are called. If only the
+	 * section's own text or attributes changed (e.g. the whitespace between its elements), reload listeners are
+	 * called but change listeners are not.</p>
+	 * <p>A listener that throws doesn't stop the other listeners or fail the reload, which has already taken effect.
+	 * What each failing listener threw is kept, see getListenerFailures().</p>
+	 *
+	 * @see ConfigFileWatcher
+	 */
+	public synchronized void reload()
+	throws IOException, ElementNotFoundException {
+		SectionSnapshot fresh = load();
+		if (fresh == null)
+			throw new ElementNotFoundException("Element:'"+rootSectionName+"' does not exist.");
+		SectionSnapshot old = this.section;
+		if (fresh.contentHash() == old.contentHash())
+			return;
+		// build the declared indexes before publishing, so lookups never pay for them
+		for (String[] ix : declaredIndexes)
+			fresh.buildIndex(ix[0], ix[1]);
+		this.section = fresh;
+		ArrayList <RuntimeException> failures = new ArrayList <RuntimeException> (0);
+		for (ReloadListener l : reloadListeners) {
+			try {
+				l.reloaded(this, old, fresh);
+			}
+			catch (RuntimeException re) {
+				failures.add(re);
+			}
 		}
-		catch (IOException ioe) {
-			throw new IOException("ConfigFileReader:IO exception building configuration from file: "+configFile+" "+ioe.getMessage());
+		if (! changeListeners.isEmpty()) {
+			// the section's own text and attributes are in its hash but not in the diff, so e.g. reformatting the file
+			// can reload the section without changing any element. Change listeners only hear of element changes
+			SectionDiff diff = SectionDiff.compare(old, fresh);
+			if (! diff.isEmpty()) {
+				for (ChangeRegistration cr : changeListeners) {
+					if ((cr.elementName == null) || diff.affects(cr.elementName)) {
+						try {
+							cr.listener.sectionChanged(this, diff);
+						}
+						catch (RuntimeException re) {
+							failures.add(re);
+						}
+					}
+				}
+			}
 		}
+		listenerFailures = failures.isEmpty() ? Collections.<RuntimeException>emptyList() : Collections.unmodifiableList(failures);
+	}
+
+	/**
+	 * @return what each listener that threw during the last reload() that changed the section threw, in the order the
+	 * listeners were called. Empty if none threw.
+	 */
+	public List<RuntimeException> getListenerFailures() {
+		return listenerFailures;
+	}
+
+	/**
+	 * @param l to be called after each successful reload() of this reader
+	 */
+	public void addReloadListener(ReloadListener l) {
+		reloadListeners.add(l);
+	}
+
+	public void removeReloadListener(ReloadListener l) {
+		reloadListeners.remove(l);
+	}
+
+	/**
+	 * @param l to be called with what changed, whenever a reload() changes anything in this reader's section
+	 */
+	public void addChangeListener(SectionChangeListener l) {
+		changeListeners.add(new ChangeRegistration(null, l));
+	}
+
+	/**
+	 * @param l to be called with what changed, only when a reload() adds, removes or changes elements named elementName
+	 */
+	public void addChangeListener(String elementName, SectionChangeListener l) {
+		changeListeners.add(new ChangeRegistration(elementName, l));
+	}
+
+	/**
+	 * Remove every registration of l, for the section and for any elements
+	 */
+	public void removeChangeListener(SectionChangeListener l) {
+		for (ChangeRegistration cr : changeListeners)
+			if (cr.listener == l)
+				changeListeners.remove(cr);
+	}
+
+	/**
+	 * @return the file this reader was loaded from
+	 */
+	public File getConfigFile() {
+		return configFile;
+	}
+
+	/**
+	 * @return the name of the section this reader was built on
+	 */
+	public String getSectionName() {
+		return rootSectionName;
 	}
 
 	/**
@@ -141,29 +305,43 @@ public class ConfigFileReader {
 	 * }
 	 * cfr.stepInto(null); // reset
 	 * </pre>
+	 * elementName may also be a path, e.g. "subsection[age='26']" or "group/member", to step through every
+	 * element it selects, in document order.
 	 */
-	@SuppressWarnings("unchecked")
 	public void stepInto(String elementName)
 	throws ElementNotFoundException {
 		if (elementName == null) {
 			stepper = null;
 			setRootElement(null);			
 		}
-		else
-			stepper = rootE.getChildren(elementName).iterator();
+		else {
+			SectionSnapshot se = current();
+			if (ConfigPath.isPath(elementName)) {
+				List <SectionSnapshot> matches = ConfigPath.compile(elementName).select(se);
+				stepper = matches.toArray(new SectionSnapshot[matches.size()]);
+			}
+			else {
+				stepper = new SectionSnapshot[se.countOf(elementName)];
+				for (int i = 0; i < stepper.length; i++)
+					stepper[i] = se.childAt(se.slotOf(elementName,i));
+			}
+			stepperPos = 0;
+		}
 	}
 	
 	public boolean hasNext() {
 		if (stepper == null)
 			return false;
-		return stepper.hasNext();
+		return stepperPos < stepper.length;
 	}
 	
 	public void stepToNext()
 	throws ElementNotFoundException {
 		if (stepper == null)
 			return;
-		setRootElement(stepper.next());
+		if (stepperPos >= stepper.length)
+			throw new NoSuchElementException();
+		setRootElement(stepper[stepperPos++]);
 	}
 	
 	
@@ -181,20 +359,71 @@ public class ConfigFileReader {
 	 * cfr.setRootElement(null); // reset things to normal
 	 * 
 	 */
-	private void setRootElement(Element e)
+	private void setRootElement(SectionSnapshot e)
 	throws ElementNotFoundException {
 		if (e == null) {
-			if (doc.getRootElement().getChild(rootSectionName) == null)
+			if (section == null)
 				throw new ElementNotFoundException("Element:'"+rootSectionName+"' does not exist.");
-			this.rootE = doc.getRootElement().getChild(rootSectionName);
+			this.rootE = null;
 		}
 		else
 			this.rootE = e;
 	}
 	
 	
+	/**
+	 * @return the compiled snapshot of the section this reader was built on. Snapshots are immutable
+	 * and can be kept and shared between threads.
+	 */
+	public SectionSnapshot getSnapshot() {
+		return section;
+	}
+
+	/**
+	 * @return a view of the section this reader was built on (its current version, if it has been reloaded).
+	 * Views have no stepping state and can be shared between threads, unlike the reader itself.
+	 */
+	public SectionView getView() {
+		return section.view();
+	}
+
+
+	/**
+	 * Fill in a new record or POJO from the elements of the current section (or of the element being stepped through),
+	 * in place of one get___ call per value. Each field is read from the element with the same name, unless a
+	 * {@link ConfigField} annotation says otherwise; fields are required unless annotated with required=false.
+	 * How to build the class is worked out on its first use and cached.
+	 * <pre>
+	 * record Person(String name, int age) {}
+	 * Person p = cfr.bind(Person.class);
+	 * </pre>
+	 * @throws ConfigFileReaderException if a required element is missing or unreadable
+	 * @throws IllegalArgumentException if the class has a field of a type that can't be bound, or no usable constructor
+	 */
+	public <T> T bind(Class<T> type)
+	throws ConfigFileReaderException {
+		return current().view().bind(type);
+	}
+
+	/**
+	 * Fill in one new record or POJO from each element named elementName, in document order. With section4 as
+	 * the root section, bindAll("subsection", Person.class) returns all three people without any stepping.
+	 * @see #bind(Class)
+	 */
+	public <T> List<T> bindAll(String elementName, Class<T> type)
+	throws ConfigFileReaderException {
+		return current().view().bindAll(elementName, type);
+	}
+
+
+	/**
+	 * @return the element in hand: the one being stepped through, or else the current root section
+	 */
+	SectionSnapshot current() {
+		SectionSnapshot se = rootE;
+		return (se != null) ? se : section;
+	}
 
-	
 
 	/**
 	 * Retrieve an integer value from the config file
@@ -206,23 +435,7 @@ public class ConfigFileReader {
 	 */
 	public int getInt(int defaultValue, boolean useDefault, String elementName)
 	throws ConfigFileReaderException, ElementNotFoundException {
-		try {
-			String s = rootE.getChildText(elementName);
-			// if the named element was not found, return the default value
-			if (s == null) {
-				if (useDefault)
-					return defaultValue;
-				else
-					throw new ElementNotFoundException("ConfigFileReader:Element not found:"+elementName);
-			}
-			return Integer.parseInt(s);
-		}
-		catch (Exception e) {
-			if (useDefault)
-				return defaultValue;
-			else
-				throw new ConfigFileReaderException("ConfigFileReader:Exception reading integer from config file: "+e.getMessage());
-		}
+		return current().view().getInt(defaultValue,useDefault,elementName);
 	}
 
 	public int getInt(String elementName)
@@ -241,23 +454,7 @@ public class ConfigFileReader {
 	 */
 	public long getLong(long defaultValue, boolean useDefault, String elementName)
 	throws ConfigFileReaderException, ElementNotFoundException {
-		try {
-			String s = rootE.getChildText(elementName);
-			// if the named element was not found, return the default value
-			if (s == null) {
-				if (useDefault)
-					return defaultValue;
-				else
-					throw new ElementNotFoundException("ConfigFileReader:Element not found:"+elementName);
-			}
-			return Long.parseLong(s);
-		}
-		catch (Exception e) {
-			if (useDefault)
-				return defaultValue;
-			else
-				throw new ConfigFileReaderException("ConfigFileReader:Exception reading long from config file: "+e.getMessage());
-		}
+		return current().view().getLong(defaultValue,useDefault,elementName);
 	}
 	
 	public long getLong(String elementName)
@@ -277,23 +474,7 @@ public class ConfigFileReader {
 	 */
 	public boolean getBoolean(boolean defaultValue, boolean useDefault, String elementName)
 	throws ConfigFileReaderException, ElementNotFoundException {
-		try {
-			String s = rootE.getChildText(elementName);
-			// if the named element was not found, return the default value
-			if (s == null) {
-				if (useDefault)
-					return defaultValue;
-				else
-					throw new ElementNotFoundException("ConfigFileReader:Element not found:"+elementName);
-			}
-			return Boolean.parseBoolean(s);
-		}
-		catch (Exception e) {
-			if (useDefault)
-				return defaultValue;
-			else
-				throw new ConfigFileReaderException("ConfigFileReader:Exception reading integer from config file: "+e.getMessage());
-		}
+		return current().view().getBoolean(defaultValue,useDefault,elementName);
 	}
 
 	public boolean getBoolean(String elementName)
@@ -312,23 +493,7 @@ public class ConfigFileReader {
 	 */
 	public String getString(String defaultValue, boolean useDefault, String elementName)
 	throws ConfigFileReaderException, ElementNotFoundException {
-		try {
-			String s = rootE.getChildText(elementName);
-			// if the named element was not found, return the default value
-			if (s == null) {
-				if (useDefault)
-					return defaultValue;
-				else
-					throw new ElementNotFoundException("ConfigFileReader:Element not found:"+elementName);
-			}
-			return s;
-		}
-		catch (Exception e) {
-			if (useDefault)
-				return defaultValue;
-			else
-				throw new ConfigFileReaderException("ConfigFileReader:Exception reading string from config file: "+e.getMessage());
-		}
+		return current().view().getString(defaultValue,useDefault,elementName);
 	}
 	
 	public String getString(String elementName)
@@ -337,6 +502,117 @@ public class ConfigFileReader {
 	}
 
 
+	/**
+	 * Lookups that never throw, and allocate nothing when the element is missing or unreadable.
+	 * These are cheaper than getInt(default,true,name) etc. for probing optional elements.
+	 */
+	public int getIntOrDefault(String elementName, int defaultValue) {
+		return current().view().getIntOrDefault(elementName,defaultValue);
+	}
+
+	public long getLongOrDefault(String elementName, long defaultValue) {
+		return current().view().getLongOrDefault(elementName,defaultValue);
+	}
+
+	public boolean getBooleanOrDefault(String elementName, boolean defaultValue) {
+		return current().view().getBooleanOrDefault(elementName,defaultValue);
+	}
+
+	public String getStringOrDefault(String elementName, String defaultValue) {
+		return current().view().getStringOrDefault(elementName,defaultValue);
+	}
+
+	/**
+	 * @return the integer value of the element, or an empty OptionalInt if it is missing or not an integer
+	 */
+	public OptionalInt findInt(String elementName) {
+		return current().view().findInt(elementName);
+	}
+
+	public OptionalLong findLong(String elementName) {
+		return current().view().findLong(elementName);
+	}
+
+	public Optional<Boolean> findBoolean(String elementName) {
+		return current().view().findBoolean(elementName);
+	}
+
+	public Optional<String> findString(String elementName) {
+		return current().view().findString(elementName);
+	}
+
+
+	/**
+	 * Visit each element named elementName, in document order, without building a List or Map of them first.
+	 * For very large repeated sections (e.g. many thousands of &lt;client&gt; entries) this avoids the per-call
+	 * copies that getList(), getMap() and getMaps() make.
+	 * <pre>
+	 * cfr.forEach("client", visitor);
+	 * </pre>
+	 * @return the number of elements visited
+	 * @see StreamingSectionLoader#forEach(File, String, String, ElementVisitor) to do the same straight from the file
+	 */
+	public int forEach(String elementName, ElementVisitor visitor) {
+		return current().view().forEach(elementName,visitor);
+	}
+
+	/**
+	 * @return a lazy stream over the elements named elementName, in document order
+	 */
+	public Stream<ConfigEntry> stream(String elementName) {
+		return current().view().stream(elementName);
+	}
+
+	/**
+	 * @return a publisher of the elements named elementName in this reader's section, read in chunks straight from
+	 * the file as subscribers ask for them, rather than from the section held in memory. For sections too large to hold.
+	 * @see SectionPublisher
+	 */
+	public SectionPublisher publish(String elementName, int chunkSize) {
+		return new SectionPublisher(configFile, rootSectionName, elementName, chunkSize);
+	}
+
+
+	/**
+	 * Index the elements named elementName in the root section by the value of one attribute, now and after every reload,
+	 * so that findByAttribute() lookups on them never have to wait for the index to be built. Without declaring it,
+	 * the index is built on the first lookup instead.
+	 * @param attributeName the attribute to index by, or null to index by the elements' text
+	 */
+	public void declareIndex(String elementName, String attributeName) {
+		declaredIndexes.add(new String[] {elementName, attributeName});
+		section.buildIndex(elementName, attributeName);
+	}
+
+	/**
+	 * Look up one of many repeated elements by the value of an attribute, through an index. For example, with
+	 * <pre>
+	 * &lt;client id="one"&gt;1&lt;/client&gt;
+	 * &lt;client id="two"&gt;22&lt;/client&gt;
+	 * </pre>
+	 * findByAttribute("client","id","two").getText() is "22".
+	 * @return the first matching element, or null if there is none
+	 */
+	public SectionView findByAttribute(String elementName, String attributeName, String value) {
+		return current().view().findByAttribute(elementName,attributeName,value);
+	}
+
+	public List<SectionView> findAllByAttribute(String elementName, String attributeName, String value) {
+		return current().view().findAllByAttribute(elementName,attributeName,value);
+	}
+
+	/**
+	 * @return the first element named elementName whose text is the given text, or null if there is none
+	 */
+	public SectionView findByText(String elementName, String text) {
+		return current().view().findByText(elementName,text);
+	}
+
+	public List<SectionView> findAllByText(String elementName, String text) {
+		return current().view().findAllByText(elementName,text);
+	}
+
+
 	/**
 	 * Retrieve many String values from the config file (where each value is in an element of the same name)
 	 * 
@@ -345,19 +621,7 @@ public class ConfigFileReader {
 	 */
 	public List<String> getList(String elementName)
 	throws ConfigFileReaderException {
-		try {
-			ArrayList <String> result = new ArrayList <String> ();
-			List <Element> l = rootE.getChildren(elementName);
-			Iterator <Element> it = l.iterator();
-			while (it.hasNext()) {
-				String s = (it.next()).getText();
-				result.add(s);
-			}
-			return result;
-		}
-		catch (Exception e) {
-			throw new ConfigFileReaderException("ConfigFileReader:Exception reading strings from config file: "+e.getMessage());
-		}
+		return current().view().getList(elementName);
 	}
 
 
@@ -386,27 +650,7 @@ public class ConfigFileReader {
 	 */
 	public HashMap<String,String> getMap(String elementName, String attributeName, boolean continueIfPossible)
 	throws ConfigFileReaderException {
-		try {
-			HashMap <String,String> result = new HashMap <String,String> ();
-			List <Element> l = rootE.getChildren(elementName);
-			Iterator <Element> it = l.iterator();
-			while (it.hasNext()) {
-				Element e = it.next();
-				String key = e.getAttributeValue(attributeName);
-				if (key == null) {
-					if (continueIfPossible)
-						continue;
-					else
-						throw new Exception("Element "+e.toString()+" lacks an attribute '"+attributeName+"'");
-				}
-				String value = e.getText();
-				result.put(key,value);
-			}
-			return result;
-		}
-		catch (Exception e) {
-			throw new ConfigFileReaderException("ConfigFileReader:Exception reading map from config file: "+e.getMessage());
-		}
+		return current().view().getMap(elementName,attributeName,continueIfPossible);
 	}
 
 	/**
@@ -437,35 +681,7 @@ public class ConfigFileReader {
 	 */
 	public HashMap<String,ArrayList<HashMap<String,String>>> getMaps(String elementName)
 	throws ConfigFileReaderException {
-		try {
-			HashMap <String,ArrayList<HashMap<String,String>>> result = new HashMap <String,ArrayList<HashMap<String,String>>> ();
-
-			List <Element> l = rootE.getChildren(elementName);
-			Iterator <Element> it = l.iterator();
-			while (it.hasNext()) {
-				Element e = it.next();
-				String key = e.getText();
-				// build the table of attributes
-				List <Attribute> attributes = e.getAttributes();
-				HashMap <String,String> resultAttributes = new HashMap<String,String>();
-				for (Attribute a : attributes) {
-					resultAttributes.put(a.getName(),a.getValue());
-				}
-				if (result.containsKey(key)) {
-					ArrayList <HashMap<String,String>> al = result.get(key);
-					al.add(resultAttributes);
-				}
-				else {
-					ArrayList <HashMap<String,String>> al = new ArrayList<HashMap<String,String>>();
-					al.add(resultAttributes);
-					result.put(key,al);
-				}
-			}
-			return result;
-		}
-		catch (Exception e) {
-			throw new ConfigFileReaderException("ConfigFileReader:Exception reading map from config file: "+e.getMessage());
-		}
+		return current().view().getMaps(elementName);
 	}
 
 
@@ -478,7 +694,7 @@ public class ConfigFileReader {
 	throws Exception {
 		File f = new File("/Users/jim/Projects/RandD_Projects/ConfigFileReader/config.xml");
 		System.out.println("test cases will use this config file:"+f.getPath());
-		ConfigFileReader cfr = new ConfigFileReader(f,"section1");
+		ConfigFileReader cfr = new ConfigFileReader(f,"section1",ConfigCache.getShared());
 
 
 		System.out.println("Trying to fetch config file with non-existent root element called 'section1XXXZ'. Should throw ElementNotFoundException");
@@ -510,20 +726,20 @@ public class ConfigFileReader {
 
 		// testing the getMap() method only
 		System.out.println("testing getMap with an element called 'client' and an attribute named 'id' from 'section3' of the test file");
-		ConfigFileReader cfr2 = new ConfigFileReader(f,"section3");
+		ConfigFileReader cfr2 = new ConfigFileReader(f,"section3",ConfigCache.getShared());
 		System.out.println("attempting to load the map");
 		HashMap <String,String> hm = cfr2.getMap("client", "id", true);
 		System.out.println("Map:\n"+hm);
 		
 		// testing the FULL getMap() method only
 		System.out.println("testing getMap with an element called 'client' and all attributes from 'section3b' of the test file");
-		ConfigFileReader cfr2b = new ConfigFileReader(f,"section3b");
+		ConfigFileReader cfr2b = new ConfigFileReader(f,"section3b",ConfigCache.getShared());
 		System.out.println("attempting to load the map");
 		HashMap<String,ArrayList<HashMap<String,String>>> hm2 = cfr2b.getMaps("client");
 		System.out.println("Map:\n"+hm2);
 
 		System.out.println("Testing the stepping feature 'stepInto' with 'section4'- there are (3) entries labeled 'subsection'");
-		ConfigFileReader cfr4 = new ConfigFileReader(f,"section4");
+		ConfigFileReader cfr4 = new ConfigFileReader(f,"section4",ConfigCache.getShared());
 		cfr4.stepInto("subsection");
 		while (cfr4.hasNext()) {
 			cfr4.stepToNext();
@@ -531,6 +747,7 @@ public class ConfigFileReader {
 			System.out.println("age:"+cfr4.getInt("age"));
 		}
 		cfr.stepInto(null);
+		System.out.println(ConfigCache.getShared());
 	}
 
 
@@ -0,0 +1,179 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the files behind a set of ConfigFileReaders, and reloads a reader when its file changes.
+ *
+ * <p>The watching and the reparsing happen on the watcher's own daemon thread, using the platform's WatchService.
+ * Each reload goes through ConfigFileReader.reload(), which builds the new section completely and then swaps it in,
+ * so threads reading from the reader are never blocked and never see a half-built section. If a reload fails
+ * (the file is malformed mid-edit, or the section has been removed) the reader keeps its old section, and the
+ * exception can be picked up from getLastError().</p>
+ *
+ * <pre>
+ * ConfigFileWatcher watcher = new ConfigFileWatcher();
+ * watcher.watch(cfr);
+ * ...
+ * watcher.close();
+ * </pre>
+ *
+ * @author jim
+ */
+public class ConfigFileWatcher {
+
+	/**
+	 * How long to wait for a burst of change events (e.g. an editor's save) to finish before reloading
+	 */
+	public static final long SETTLE_MILLIS = 100;
+
+	private final WatchService watchService;
+	private final Thread thread;
+	private volatile boolean running = true;
+
+	// all guarded by "this"
+	private final HashMap <WatchKey,Path> directories = new HashMap <WatchKey,Path> ();
+	private final HashMap <Path,List<ConfigFileReader>> readers = new HashMap <Path,List<ConfigFileReader>> ();
+
+	private volatile Exception lastError = null;
+	private volatile long reloadCount = 0;
+
+
+	public ConfigFileWatcher()
+	throws IOException {
+		watchService = FileSystems.getDefault().newWatchService();
+		thread = new Thread(new Runnable() {
+			public void run() {
+				watchLoop();
+			}
+		}, "ConfigFileWatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	/**
+	 * Start reloading cfr whenever its config file changes
+	 */
+	public synchronized void watch(ConfigFileReader cfr)
+	throws IOException {
+		Path file = cfr.getConfigFile().getCanonicalFile().toPath();
+		Path dir = file.getParent();
+		if (! directories.containsValue(dir)) {
+			WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+			directories.put(key, dir);
+		}
+		List <ConfigFileReader> l = readers.get(file);
+		if (l == null) {
+			l = new ArrayList <ConfigFileReader> ();
+			readers.put(file, l);
+		}
+		l.add(cfr);
+	}
+
+	/**
+	 * Stop reloading cfr. Its file's directory stays registered until the watcher is closed.
+	 */
+	public synchronized void unwatch(ConfigFileReader cfr)
+	throws IOException {
+		Path file = cfr.getConfigFile().getCanonicalFile().toPath();
+		List <ConfigFileReader> l = readers.get(file);
+		if (l != null) {
+			l.remove(cfr);
+			if (l.isEmpty())
+				readers.remove(file);
+		}
+	}
+
+	/**
+	 * Stop watching and end the watcher thread
+	 */
+	public void close()
+	throws IOException {
+		running = false;
+		watchService.close();
+		thread.interrupt();
+	}
+
+
+	/**
+	 * @return the exception from the most recent failed reload, or null if none has failed
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * @return the number of successful reloads so far
+	 */
+	public long getReloadCount() {
+		return reloadCount;
+	}
+
+
+	private void watchLoop() {
+		while (running) {
+			try {
+				HashSet <Path> changed = new HashSet <Path> ();
+				WatchKey key = watchService.take();
+				// gather up this event and any that follow close behind it
+				while (key != null) {
+					collect(key, changed);
+					key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+				}
+				for (Path p : changed)
+					reload(p);
+			}
+			catch (InterruptedException ie) {
+				// close() was called
+			}
+			catch (ClosedWatchServiceException cwse) {
+				running = false;
+			}
+		}
+	}
+
+	private synchronized void collect(WatchKey key, Set<Path> changed) {
+		Path dir = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (dir == null)
+				continue;
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// events were lost - reload everything in this directory
+				for (Path p : readers.keySet())
+					if (dir.equals(p.getParent()))
+						changed.add(p);
+			}
+			else {
+				Path p = dir.resolve((Path) event.context());
+				if (readers.containsKey(p))
+					changed.add(p);
+			}
+		}
+		if (! key.reset())
+			directories.remove(key);
+	}
+
+	private void reload(Path file) {
+		List <ConfigFileReader> l;
+		synchronized (this) {
+			List <ConfigFileReader> watched = readers.get(file);
+			if (watched == null)
+				return;
+			l = new ArrayList <ConfigFileReader> (watched);
+		}
+		for (ConfigFileReader cfr : l) {
+			try {
+				cfr.reload();
+				reloadCount++;
+			}
+			catch (Exception e) {
+				lastError = e;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,291 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * The binary image format for compiled config files, and the code to write and read it.
+ *
+ * <p>An image holds the whole document - root element, sections, elements, attributes and repeated
+ * elements - in one flat buffer, laid out so that a single section can be found and decoded without
+ * touching the rest:</p>
+ * <pre>
+ * header:  int magic, int version, long source checksum (CRC32 of the XML), long source length,
+ *          long parse time (nanoseconds the XML took to parse, or 0), int root node offset, int string table offset
+ * nodes:   int name, int text, int attribute count, (int name, int value) per attribute,
+ *          int child count, int offset per child
+ *          (children are written before their parents, so the root node is last)
+ * strings: int count, int offset per string, int end offset, then the UTF-8 bytes of every string
+ * </pre>
+ * <p>Names and text are indexes into the string table, where each distinct string is stored once.
+ * Strings are only decoded when a node that uses them is read.</p>
+ *
+ * @author jim
+ */
+final class ConfigImage {
+
+	static final int MAGIC = 0x43465249; // "CFRI"
+	static final int VERSION = 2;
+	static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 4;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final ByteBuffer buf;
+	private final long sourceChecksum;
+	private final long sourceLength;
+	private final long parseNanos;
+	private final int rootOffset;
+	private final int stringCount;
+	private final int stringOffsets;	// where the string offset table starts
+	private final int stringBytes;	// where the string bytes start
+	private final String[] strings;	// decoded on first use
+
+
+	private ConfigImage(ByteBuffer buf)
+	throws IOException {
+		this.buf = buf;
+		if ((buf.limit() < HEADER_SIZE) || (buf.getInt(0) != MAGIC))
+			throw new IOException("ConfigFileReader:Not a config image");
+		if (buf.getInt(4) != VERSION)
+			throw new IOException("ConfigFileReader:Config image is version "+buf.getInt(4)+", expected "+VERSION);
+		sourceChecksum = buf.getLong(8);
+		sourceLength = buf.getLong(16);
+		parseNanos = buf.getLong(24);
+		rootOffset = buf.getInt(32);
+		int stringTable = buf.getInt(36);
+		if ((stringTable < HEADER_SIZE) || (stringTable > buf.limit() - 8))
+			throw new IOException("ConfigFileReader:Config image is damaged: string table at "+stringTable);
+		stringCount = buf.getInt(stringTable);
+		stringOffsets = stringTable + 4;
+		// check the count against the space left before allocating, so a damaged count can't ask for gigabytes
+		if ((stringCount < 0) || (stringCount > (buf.limit() - stringOffsets) / 4 - 1))
+			throw new IOException("ConfigFileReader:Config image is damaged: "+stringCount+" strings");
+		stringBytes = stringOffsets + (stringCount + 1) * 4;
+		strings = new String[stringCount];
+	}
+
+
+	/**
+	 * Map an image file into memory. The file is not read until nodes are decoded.
+	 */
+	static ConfigImage map(File imageFile)
+	throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(imageFile, "r");
+		try {
+			FileChannel fc = raf.getChannel();
+			return new ConfigImage(fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()));
+		}
+		finally {
+			raf.close(); // the mapping stays valid after the channel is closed
+		}
+	}
+
+	long getSourceChecksum() {
+		return sourceChecksum;
+	}
+
+	long getSourceLength() {
+		return sourceLength;
+	}
+
+	/**
+	 * @return how long the XML took to parse when the image was compiled, in nanoseconds, or 0 if not known
+	 */
+	long getParseNanos() {
+		return parseNanos;
+	}
+
+
+	/**
+	 * @return the named child of the root element, decoded into a snapshot, or null if there is no such section
+	 */
+	SectionSnapshot readSection(String sectionName)
+	throws IOException {
+		try {
+			int children = rootOffset + 8 + 4 + buf.getInt(rootOffset + 8) * 8;
+			int n = buf.getInt(children);
+			for (int i = 0; i < n; i++) {
+				int offset = buf.getInt(children + 4 + i * 4);
+				if (string(buf.getInt(offset)).equals(sectionName))
+					return readNode(offset);
+			}
+			return null;
+		}
+		catch (RuntimeException re) {
+			// an offset or count out of range
+			throw new IOException("ConfigFileReader:Config image is damaged: "+re);
+		}
+	}
+
+	/**
+	 * @return the root element, and the whole document under it, decoded into a snapshot
+	 */
+	SectionSnapshot readDocument()
+	throws IOException {
+		try {
+			return readNode(rootOffset);
+		}
+		catch (RuntimeException re) {
+			// an offset or count out of range
+			throw new IOException("ConfigFileReader:Config image is damaged: "+re);
+		}
+	}
+
+	private SectionSnapshot readNode(int offset) {
+		String name = Symbols.name(string(buf.getInt(offset)));
+		String text = string(buf.getInt(offset + 4));
+		int p = offset + 8;
+		int attributes = buf.getInt(p);
+		p += 4;
+		if ((attributes < 0) || (attributes > (buf.limit() - p) / 8))
+			throw new IndexOutOfBoundsException(attributes+" attributes at "+offset);
+		String[] attributeNames = SectionSnapshot.NO_STRINGS;
+		String[] attributeValues = SectionSnapshot.NO_STRINGS;
+		if (attributes > 0) {
+			attributeNames = new String[attributes];
+			attributeValues = new String[attributes];
+			for (int i = 0; i < attributes; i++) {
+				attributeNames[i] = Symbols.name(string(buf.getInt(p)));
+				attributeValues[i] = string(buf.getInt(p + 4));
+				p += 8;
+			}
+		}
+		int n = buf.getInt(p);
+		p += 4;
+		if ((n < 0) || (n > (buf.limit() - p) / 4))
+			throw new IndexOutOfBoundsException(n+" children at "+offset);
+		SectionSnapshot[] children = SectionSnapshot.NO_CHILDREN;
+		if (n > 0) {
+			children = new SectionSnapshot[n];
+			for (int i = 0; i < n; i++) {
+				int child = buf.getInt(p + i * 4);
+				if (child >= offset)	// children always come first, so this can only be damage - and might loop
+					throw new IndexOutOfBoundsException("child at "+child+" of node at "+offset);
+				children[i] = readNode(child);
+			}
+		}
+		return new SectionSnapshot(name, text, attributeNames, attributeValues, children);
+	}
+
+	private String string(int index) {
+		String s = strings[index];
+		if (s == null) {
+			int start = buf.getInt(stringOffsets + index * 4);
+			int end = buf.getInt(stringOffsets + (index + 1) * 4);
+			if ((start < 0) || (start > end) || (end > buf.limit() - stringBytes))
+				throw new IndexOutOfBoundsException("string "+index+" at "+start+"-"+end);
+			byte[] b = new byte[end - start];
+			ByteBuffer dup = buf.duplicate();
+			dup.position(stringBytes + start);
+			dup.get(b);
+			s = new String(b, UTF8);
+			strings[index] = s;
+		}
+		return s;
+	}
+
+
+	/**
+	 * Write a compiled document out as an image
+	 * @param document the compiled root element
+	 * @param sourceChecksum checksum of the XML the document came from, from checksum(File)
+	 * @param sourceLength length of the XML the document came from
+	 * @param parseNanos how long the XML took to parse, or 0
+	 */
+	static byte[] write(SectionSnapshot document, long sourceChecksum, long sourceLength, long parseNanos)
+	throws IOException {
+		ByteArrayOutputStream nodeBytes = new ByteArrayOutputStream();
+		DataOutputStream nodes = new DataOutputStream(nodeBytes);
+		LinkedHashMap <String,Integer> stringIndex = new LinkedHashMap <String,Integer> ();
+		int root = writeNode(document, nodes, stringIndex);
+		nodes.flush();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_SIZE + nodeBytes.size() + stringIndex.size() * 16);
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeLong(sourceChecksum);
+		dos.writeLong(sourceLength);
+		dos.writeLong(parseNanos);
+		dos.writeInt(root);
+		dos.writeInt(HEADER_SIZE + nodeBytes.size());
+		nodeBytes.writeTo(dos);
+
+		// string table
+		dos.writeInt(stringIndex.size());
+		ArrayList <byte[]> encoded = new ArrayList <byte[]> (stringIndex.size());
+		int offset = 0;
+		for (String s : stringIndex.keySet()) {
+			byte[] b = s.getBytes(UTF8);
+			encoded.add(b);
+			dos.writeInt(offset);
+			offset += b.length;
+		}
+		dos.writeInt(offset);
+		for (byte[] b : encoded)
+			dos.write(b);
+		dos.flush();
+		return out.toByteArray();
+	}
+
+	/**
+	 * Write the node's children, then the node
+	 * @return the offset of the node in the image
+	 */
+	private static int writeNode(SectionSnapshot node, DataOutputStream out, Map<String,Integer> stringIndex)
+	throws IOException {
+		int[] children = new int[node.size()];
+		for (int i = 0; i < children.length; i++)
+			children[i] = writeNode(node.childAt(i), out, stringIndex);
+
+		int offset = HEADER_SIZE + out.size();
+		out.writeInt(intern(node.getName(), stringIndex));
+		out.writeInt(intern(node.getText(), stringIndex));
+		out.writeInt(node.attributeCount());
+		for (int i = 0; i < node.attributeCount(); i++) {
+			out.writeInt(intern(node.attributeName(i), stringIndex));
+			out.writeInt(intern(node.attributeValue(i), stringIndex));
+		}
+		out.writeInt(children.length);
+		for (int c : children)
+			out.writeInt(c);
+		return offset;
+	}
+
+	private static int intern(String s, Map<String,Integer> stringIndex) {
+		Integer i = stringIndex.get(s);
+		if (i == null) {
+			i = Integer.valueOf(stringIndex.size());
+			stringIndex.put(s, i);
+		}
+		return i.intValue();
+	}
+
+
+	/**
+	 * @return the CRC32 of the file's contents, read in one streaming pass
+	 */
+	static long checksum(File f)
+	throws IOException {
+		CRC32 crc = new CRC32();
+		FileInputStream in = new FileInputStream(f);
+		try {
+			FileChannel fc = in.getChannel();
+			ByteBuffer bb = ByteBuffer.allocateDirect(65536);
+			while (fc.read(bb) >= 0) {
+				bb.flip();
+				crc.update(bb);
+				bb.clear();
+			}
+		}
+		finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+}
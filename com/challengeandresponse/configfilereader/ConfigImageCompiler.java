@@ -0,0 +1,83 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.*;
+
+/**
+ * Compiles an XML config file into a binary image that an ImageSectionLoader can map into memory,
+ * so that short-lived processes can skip the XML parse entirely.
+ *
+ * <pre>
+ * java com.challengeandresponse.configfilereader.ConfigImageCompiler config.xml config.cfri
+ * </pre>
+ *
+ * @author jim
+ */
+public class ConfigImageCompiler {
+
+	/**
+	 * Parse configFile and write its image to imageFile, replacing any image already there
+	 */
+	public static void compile(File configFile, File imageFile)
+	throws IOException {
+		// checksum first, so that if the file changes while we parse, the image will look stale rather than current
+		long checksum = ConfigImage.checksum(configFile);
+		long length = configFile.length();
+		long start = System.nanoTime();
+		SectionSnapshot document = new DOMSectionLoader().loadDocument(configFile);
+		write(ConfigImage.write(document, checksum, length, System.nanoTime() - start), imageFile);
+	}
+
+	/**
+	 * Write an image to imageFile, replacing any image already there. The image is written alongside under
+	 * another name and renamed into place, so a reader never maps a half-written image
+	 */
+	static void write(byte[] image, File imageFile)
+	throws IOException {
+		File dir = imageFile.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile(imageFile.getName(), ".tmp", dir);
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(image);
+			}
+			finally {
+				out.close();
+			}
+			if (! tmp.renameTo(imageFile)) {
+				imageFile.delete();
+				if (! tmp.renameTo(imageFile))
+					throw new IOException("ConfigFileReader:Could not write config image: "+imageFile);
+			}
+		}
+		finally {
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * @return true if imageFile exists, is a readable image, and was compiled from the current contents of configFile
+	 */
+	public static boolean isCurrent(File configFile, File imageFile) {
+		if (! imageFile.exists())
+			return false;
+		try {
+			ConfigImage ci = ConfigImage.map(imageFile);
+			return (ci.getSourceLength() == configFile.length()) && (ci.getSourceChecksum() == ConfigImage.checksum(configFile));
+		}
+		catch (IOException ioe) {
+			return false;
+		}
+	}
+
+
+	public static void main(String[] args)
+	throws Exception {
+		if (args.length != 2) {
+			System.out.println("usage: ConfigImageCompiler configFile.xml imageFile");
+			System.exit(1);
+		}
+		compile(new File(args[0]), new File(args[1]));
+		System.out.println("compiled "+args[0]+" to "+args[1]+" ("+new File(args[1]).length()+" bytes)");
+	}
+
+}
@@ -0,0 +1,53 @@
+package com.challengeandresponse.configfilereader;
+
+/**
+ * A handle on one element of a section: its name, its type and the value to use if it is missing or unreadable.
+ * Keys are declared once, through a ConfigKeys, and each one is given a fixed slot. Reading a key from a
+ * BoundConfig is then an array load - no element names are looked up on the read path.
+ *
+ * <pre>
+ * static final ConfigKeys KEYS = new ConfigKeys();
+ * static final ConfigKey&lt;Integer&gt; PORT = KEYS.intKey("port", 8080);
+ * ...
+ * BoundConfig config = KEYS.bind(cfr);
+ * int port = config.getInt(PORT);
+ * </pre>
+ *
+ * @author jim
+ */
+public final class ConfigKey<T> {
+
+	final ConfigKeys owner;
+	final String name;
+	final Class<T> type;
+	final T defaultValue;
+	final int slot;	// index into the BoundConfig array for this key's type
+
+	ConfigKey(ConfigKeys owner, String name, Class<T> type, T defaultValue, int slot) {
+		this.owner = owner;
+		this.name = name;
+		this.type = type;
+		this.defaultValue = defaultValue;
+		this.slot = slot;
+	}
+
+	/**
+	 * @return the name of the element this key reads
+	 */
+	public String getName() {
+		return name;
+	}
+
+	public Class<T> getType() {
+		return type;
+	}
+
+	public T getDefaultValue() {
+		return defaultValue;
+	}
+
+	public String toString() {
+		return "ConfigKey:"+name+"("+type.getSimpleName()+")";
+	}
+
+}
@@ -0,0 +1,200 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.*;
+
+/**
+ * A set of ConfigKeys, declared together and bound together to a section.
+ *
+ * <p>Declare every key first, then bind. Binding resolves each key against the section once, storing the
+ * typed values in arrays indexed by the keys' slots. A binding made from a ConfigFileReader rebinds itself
+ * whenever the reader is reloaded, so handles stay valid and reads stay array loads across reloads.</p>
+ *
+ * @see ConfigKey
+ * @author jim
+ */
+public final class ConfigKeys {
+
+	private final ArrayList <ConfigKey<?>> keys = new ArrayList <ConfigKey<?>> ();
+	private int ints = 0;
+	private int longs = 0;
+	private int booleans = 0;
+	private int strings = 0;
+	private boolean bound = false;
+	private volatile ConfigKey<?>[] frozen = null;	// the keys, once the first bind or holder has closed the set
+
+
+	public synchronized ConfigKey<Integer> intKey(String elementName, int defaultValue) {
+		return add(new ConfigKey<Integer>(this, elementName, Integer.class, Integer.valueOf(defaultValue), ints++));
+	}
+
+	public synchronized ConfigKey<Long> longKey(String elementName, long defaultValue) {
+		return add(new ConfigKey<Long>(this, elementName, Long.class, Long.valueOf(defaultValue), longs++));
+	}
+
+	public synchronized ConfigKey<Boolean> booleanKey(String elementName, boolean defaultValue) {
+		return add(new ConfigKey<Boolean>(this, elementName, Boolean.class, Boolean.valueOf(defaultValue), booleans++));
+	}
+
+	public synchronized ConfigKey<String> stringKey(String elementName, String defaultValue) {
+		return add(new ConfigKey<String>(this, elementName, String.class, defaultValue, strings++));
+	}
+
+	private <T> ConfigKey<T> add(ConfigKey<T> key) {
+		if (bound)
+			throw new IllegalStateException("ConfigKeys: keys must all be declared before the first bind(); cannot add "+key);
+		keys.add(key);
+		return key;
+	}
+
+	/**
+	 * @return the keys declared so far, in order of declaration
+	 */
+	public synchronized List<ConfigKey<?>> getKeys() {
+		return Collections.unmodifiableList(new ArrayList <ConfigKey<?>> (keys));
+	}
+
+
+	/**
+	 * Bind the keys to the reader's section. The binding follows the reader: when the reader is reloaded,
+	 * the keys are resolved against the new section and the binding switches over in one step.
+	 * Each binding is registered with the reader until BoundConfig.unbind(), so bind once and share the binding.
+	 */
+	public BoundConfig bind(ConfigFileReader cfr) {
+		final BoundConfig bc = new BoundConfig(this, resolve(cfr.getSnapshot()));
+		bc.follow(cfr);
+		return bc;
+	}
+
+	/**
+	 * Bind the keys to a fixed section, e.g. one element from SectionView.stepInto()
+	 */
+	public BoundConfig bind(SectionView view) {
+		return new BoundConfig(this, resolve(view.getSnapshot()));
+	}
+
+
+	/**
+	 * @return a holder for the keys' values, to be filled by fetch() and reused, e.g. once per element of a
+	 * stepInto()/stepToNext() loop. It starts out holding the defaults. Unlike a binding, a holder doesn't follow
+	 * reloads, and is refilled in place, so use one holder per thread.
+	 */
+	public BoundConfig newHolder() {
+		ConfigKey<?>[] ks = freeze();
+		BoundConfig.Values v = new BoundConfig.Values(ints, longs, booleans, strings);
+		for (ConfigKey<?> k : ks)
+			resolve(k, -1, null, v);
+		return new BoundConfig(this, v, true);
+	}
+
+	/**
+	 * Resolve every key against the reader's element in hand - the one being stepped through, or else the section -
+	 * in one pass, into the holder. Nothing is allocated unless a key is missing or unreadable; any such keys get
+	 * their defaults and are listed in the holder's getProblems().
+	 * @param holder from newHolder()
+	 * @return the holder
+	 */
+	public BoundConfig fetch(ConfigFileReader cfr, BoundConfig holder) {
+		return fetch(cfr.current(), holder);
+	}
+
+	public BoundConfig fetch(SectionView view, BoundConfig holder) {
+		return fetch(view.getSnapshot(), holder);
+	}
+
+	/**
+	 * As fetch(), but treat every key as required
+	 * @throws ConfigFileReaderException naming all of the keys that were missing or unreadable, not just the first.
+	 * The holder is filled either way.
+	 */
+	public BoundConfig fetchRequired(ConfigFileReader cfr, BoundConfig holder)
+	throws ConfigFileReaderException {
+		return required(fetch(cfr.current(), holder));
+	}
+
+	public BoundConfig fetchRequired(SectionView view, BoundConfig holder)
+	throws ConfigFileReaderException {
+		return required(fetch(view.getSnapshot(), holder));
+	}
+
+	private BoundConfig fetch(SectionSnapshot se, BoundConfig holder) {
+		if ((holder.getKeys() != this) || (! holder.isHolder()))
+			throw new IllegalArgumentException("ConfigKeys: fetch() needs a holder from this ConfigKeys' newHolder()");
+		resolve(se, holder.values());
+		return holder;
+	}
+
+	private static BoundConfig required(BoundConfig holder)
+	throws ConfigFileReaderException {
+		List <String> problems = holder.getProblems();
+		if (problems.isEmpty())
+			return holder;
+		StringBuilder sb = new StringBuilder("ConfigFileReader:"+problems.size()+" element(s) missing or unreadable:");
+		for (String p : problems)
+			sb.append("\n\t").append(p);
+		throw new ConfigFileReaderException(sb.toString());
+	}
+
+
+	/**
+	 * Look each key up in the section once, falling back to its default if the element is missing or unreadable
+	 */
+	BoundConfig.Values resolve(SectionSnapshot se) {
+		ConfigKey<?>[] ks = freeze();
+		BoundConfig.Values v = new BoundConfig.Values(ints, longs, booleans, strings);
+		resolve(ks, se, v);
+		return v;
+	}
+
+	private void resolve(SectionSnapshot se, BoundConfig.Values v) {
+		resolve(freeze(), se, v);
+	}
+
+	private static void resolve(ConfigKey<?>[] ks, SectionSnapshot se, BoundConfig.Values v) {
+		v.problems.clear();
+		for (ConfigKey<?> k : ks)
+			resolve(k, se.slotOf(k.name), se, v);
+	}
+
+	/**
+	 * Close the set of keys, the first time it is bound, and return them. From then on the keys and the counts
+	 * of each type never change, so resolving them takes no lock.
+	 */
+	private ConfigKey<?>[] freeze() {
+		ConfigKey<?>[] ks = frozen;
+		if (ks != null)
+			return ks;
+		synchronized (this) {
+			if (frozen == null) {
+				bound = true;
+				frozen = keys.toArray(new ConfigKey<?>[keys.size()]);
+			}
+			return frozen;
+		}
+	}
+
+	/**
+	 * Store one key's value, from the slot if there is one and it is readable as the key's type, else the default
+	 */
+	private static void resolve(ConfigKey<?> k, int slot, SectionSnapshot se, BoundConfig.Values v) {
+		boolean ok = (slot >= 0);
+		if (k.type == Integer.class) {
+			ok = ok && se.isInt(slot);
+			v.ints[k.slot] = ok ? se.intAt(slot) : ((Integer) k.defaultValue).intValue();
+		}
+		else if (k.type == Long.class) {
+			ok = ok && se.isLong(slot);
+			v.longs[k.slot] = ok ? se.longAt(slot) : ((Long) k.defaultValue).longValue();
+		}
+		else if (k.type == Boolean.class)
+			v.booleans[k.slot] = ok ? se.booleanAt(slot) : ((Boolean) k.defaultValue).booleanValue();
+		else
+			v.strings[k.slot] = ok ? se.textAt(slot) : (String) k.defaultValue;
+		if ((! ok) && (se != null)) {
+			if (slot < 0)
+				v.problems.add("ConfigFileReader:Element not found:"+k.name);
+			else
+				v.problems.add("ConfigFileReader:Element "+k.name+" is not a valid "+k.type.getSimpleName()+": "+SectionView.describeFailure(se, slot, k.name, k.type == Long.class));
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.*;
+
+/**
+ * Thrown when some of a batch of loads fail. Every failure is reported, not just the first: each one is in
+ * getFailures(), keyed by the load's position in the batch, and is also attached as a suppressed exception. The same
+ * file and section may be requested more than once in a batch, and each such load is reported on its own.
+ *
+ * @see ConfigLoader#loadAll(java.io.File[], String[])
+ * @author jim
+ */
+public class ConfigLoadException
+extends ConfigFileReaderException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Map <Integer,Throwable> failures;
+	private final String[] requests;
+
+
+	/**
+	 * @param failures the exception from each failed load, keyed by its position in requests
+	 * @param requests "file#section" for every load in the batch, in the order requested
+	 */
+	public ConfigLoadException(Map<Integer,Throwable> failures, String[] requests) {
+		super(message(failures, requests));
+		this.failures = Collections.unmodifiableMap(new TreeMap <Integer,Throwable> (failures));
+		this.requests = requests.clone();
+		for (Throwable t : this.failures.values())
+			addSuppressed(t);
+	}
+
+	private static String message(Map<Integer,Throwable> failures, String[] requests) {
+		StringBuilder sb = new StringBuilder("ConfigFileReader:"+failures.size()+" of "+requests.length+" config loads failed:");
+		for (Map.Entry<Integer,Throwable> e : new TreeMap <Integer,Throwable> (failures).entrySet())
+			sb.append("\n  [").append(e.getKey()).append("] ").append(requests[e.getKey().intValue()]).append(": ").append(e.getValue().getMessage());
+		return sb.toString();
+	}
+
+	/**
+	 * @return the exception from each failed load, keyed by its position in the arrays passed to loadAll(), in that order
+	 */
+	public Map<Integer,Throwable> getFailures() {
+		return failures;
+	}
+
+	/**
+	 * @return "file#section" for the load at position i in the batch
+	 */
+	public String getRequest(int i) {
+		return requests[i];
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Builds ConfigFileReaders in parallel, so that starting up with many files and sections takes about as long as
+ * the largest file rather than the sum of them all.
+ *
+ * <p>Each load runs as its own task - on a virtual thread where the JVM has them (Java 21 and later), otherwise on a
+ * fork-join pool sized for blocking I/O. Readers are built through a ConfigCache (the shared one unless another is
+ * given), so each file is parsed once however many sections, or repeated requests, are loaded from it, even when the
+ * requests arrive at the same time.</p>
+ *
+ * <pre>
+ * ConfigLoader loader = new ConfigLoader();
+ * List&lt;ConfigFileReader&gt; readers = loader.loadAll(
+ * 	new File[] {f, f, g},
+ * 	new String[] {"section1", "section3", "server"});	// f is parsed once
+ * CompletableFuture&lt;ConfigFileReader&gt; later = loader.loadAsync(h, "section1");
+ * </pre>
+ *
+ * @author jim
+ */
+public class ConfigLoader {
+
+	private static volatile Executor defaultExecutor = null;
+
+	private final Executor executor;
+	private final SectionLoader sectionLoader;
+
+
+	public ConfigLoader() {
+		this(getDefaultExecutor(), ConfigCache.getShared());
+	}
+
+	/**
+	 * @param executor runs the loads
+	 * @param sectionLoader how each reader loads its section. A ConfigCache shares one parse per file
+	 */
+	public ConfigLoader(Executor executor, SectionLoader sectionLoader) {
+		this.executor = executor;
+		this.sectionLoader = sectionLoader;
+	}
+
+	/**
+	 * @return a virtual-thread-per-task executor if this JVM has virtual threads, otherwise a fork-join pool of
+	 * daemon threads with enough parallelism to keep the disk busy
+	 */
+	public static Executor getDefaultExecutor() {
+		Executor e = defaultExecutor;
+		if (e == null) {
+			synchronized (ConfigLoader.class) {
+				if (defaultExecutor == null) {
+					try {
+						Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+						defaultExecutor = (Executor) m.invoke(null);
+					}
+					catch (ReflectiveOperationException roe) {
+						defaultExecutor = new ForkJoinPool(Math.max(8, Runtime.getRuntime().availableProcessors() * 2));
+					}
+				}
+				e = defaultExecutor;
+			}
+		}
+		return e;
+	}
+
+
+	/**
+	 * Start building a reader in the background
+	 * @return a future that completes with the reader, or exceptionally with the IOException or
+	 * ElementNotFoundException the constructor threw (wrapped in a CompletionException)
+	 */
+	public CompletableFuture<ConfigFileReader> loadAsync(final File configFile, final String sectionName) {
+		return CompletableFuture.supplyAsync(new Supplier<ConfigFileReader>() {
+			public ConfigFileReader get() {
+				try {
+					return new ConfigFileReader(configFile, sectionName, sectionLoader);
+				}
+				catch (Exception e) {
+					throw new CompletionException(e);
+				}
+			}
+		}, executor);
+	}
+
+	/**
+	 * Start building one reader per (configFiles[i], sectionNames[i]) pair, all at once
+	 * @return a future that completes with the readers in the order requested once all have loaded, or exceptionally
+	 * with a ConfigLoadException listing every load that failed
+	 */
+	public CompletableFuture<List<ConfigFileReader>> loadAllAsync(final File[] configFiles, final String[] sectionNames) {
+		if (configFiles.length != sectionNames.length)
+			throw new IllegalArgumentException("ConfigFileReader:loadAll needs one section name per file");
+		@SuppressWarnings("unchecked")
+		final CompletableFuture<ConfigFileReader>[] futures = (CompletableFuture<ConfigFileReader>[]) new CompletableFuture<?>[configFiles.length];
+		for (int i = 0; i < futures.length; i++)
+			futures[i] = loadAsync(configFiles[i], sectionNames[i]);
+		return CompletableFuture.allOf(futures).handle(new BiFunction<Void,Throwable,List<ConfigFileReader>>() {
+			public List<ConfigFileReader> apply(Void v, Throwable ignored) {
+				ArrayList <ConfigFileReader> readers = new ArrayList <ConfigFileReader> (futures.length);
+				LinkedHashMap <Integer,Throwable> failures = new LinkedHashMap <Integer,Throwable> ();
+				for (int i = 0; i < futures.length; i++) {
+					try {
+						readers.add(futures[i].join());
+					}
+					catch (CompletionException ce) {
+						Throwable cause = (ce.getCause() != null) ? ce.getCause() : ce;
+						failures.put(Integer.valueOf(i), cause);
+					}
+					catch (CancellationException ce) {
+						failures.put(Integer.valueOf(i), ce);
+					}
+				}
+				if (! failures.isEmpty()) {
+					String[] requests = new String[futures.length];
+					for (int i = 0; i < requests.length; i++)
+						requests[i] = configFiles[i]+"#"+sectionNames[i];
+					throw new CompletionException(new ConfigLoadException(failures, requests));
+				}
+				return readers;
+			}
+		});
+	}
+
+	/**
+	 * Build one reader per (configFiles[i], sectionNames[i]) pair, in parallel, and wait for them all
+	 * @return the readers, in the order requested
+	 * @throws ConfigLoadException if any of the loads failed. The others are still attempted, and every failure is reported
+	 */
+	public List<ConfigFileReader> loadAll(File[] configFiles, String[] sectionNames)
+	throws ConfigLoadException {
+		try {
+			return loadAllAsync(configFiles, sectionNames).join();
+		}
+		catch (CompletionException ce) {
+			if (ce.getCause() instanceof ConfigLoadException)
+				throw (ConfigLoadException) ce.getCause();
+			throw ce;
+		}
+	}
+
+}
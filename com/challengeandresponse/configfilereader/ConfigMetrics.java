@@ -0,0 +1,263 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.*;
+
+/**
+ * Process-wide counters for how config is used: reads per key, lookups that found nothing, reads that fell back
+ * to a default, values that could not be parsed, failed parses and loads, and how long loads and parses take.
+ *
+ * <p>Metrics are off unless the system property METRICS_PROPERTY is "true" or setEnabled(true) is called. When
+ * they are off, the only cost on a read is one check of a static flag. When they are on, each read adds a
+ * LongAdder increment (LongAdders are striped, so threads reading the same key don't contend).</p>
+ *
+ * <p>Reads are counted per section and element name or path as given. Paths with values in them, e.g.
+ * "client[@id='"+id+"']", can make endless distinct keys, so only the first MAX_KEYS keys are counted on their own;
+ * reads of any later ones are counted, per section, under OTHER_KEY.</p>
+ *
+ * <pre>
+ * ConfigMetrics.getInstance().setEnabled(true);
+ * ConfigMetrics.getInstance().registerMBean();	// for jconsole etc.
+ * ...
+ * Map&lt;String,Long&gt; reads = ConfigMetrics.getInstance().getReadCounts();
+ * </pre>
+ *
+ * @author jim
+ */
+public final class ConfigMetrics
+implements ConfigMetricsMBean {
+
+	public static final String METRICS_PROPERTY = "com.challengeandresponse.configfilereader.metrics";
+	public static final String OBJECT_NAME = "com.challengeandresponse.configfilereader:type=ConfigMetrics";
+
+	private static final ConfigMetrics INSTANCE = new ConfigMetrics();
+
+	// checked on every read, so kept as a plain static field rather than behind a method call
+	static volatile boolean enabled = Boolean.getBoolean(METRICS_PROPERTY);
+
+	/**
+	 * The most distinct section/element keys that getReadCounts() reports separately
+	 */
+	public static final int MAX_KEYS = 4096;
+	/**
+	 * The element name that reads of keys beyond MAX_KEYS are counted under
+	 */
+	public static final String OTHER_KEY = "(other)";
+	private static final String NULL_KEY = "(null)";
+
+	// section name -> element name -> reads
+	private final ConcurrentHashMap <String,ConcurrentHashMap<String,LongAdder>> reads = new ConcurrentHashMap <String,ConcurrentHashMap<String,LongAdder>> ();
+	private final AtomicInteger keyCount = new AtomicInteger();
+	private final LongAdder readCount = new LongAdder();
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder defaultCount = new LongAdder();
+	private final LongAdder invalidCount = new LongAdder();
+	private final LongAdder parseFailureCount = new LongAdder();
+	private final LongAdder loadFailureCount = new LongAdder();
+
+	private final ConcurrentHashMap <String,LatencyHistogram> loadTimes = new ConcurrentHashMap <String,LatencyHistogram> ();
+	private final ConcurrentHashMap <String,LatencyHistogram> parseTimes = new ConcurrentHashMap <String,LatencyHistogram> ();
+
+
+	private ConfigMetrics() {
+	}
+
+	public static ConfigMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		ConfigMetrics.enabled = enabled;
+	}
+
+	/**
+	 * Register with the platform MBean server. Registering twice is harmless.
+	 */
+	public void registerMBean()
+	throws JMException {
+		MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (! mbs.isRegistered(name))
+			mbs.registerMBean(this, name);
+	}
+
+
+	/*
+	 * Recording. Callers check "enabled" first.
+	 */
+
+	void read(String sectionName, String elementName, boolean found) {
+		ConcurrentHashMap <String,LongAdder> bySection = reads.get(sectionName);
+		if (bySection == null) {
+			bySection = new ConcurrentHashMap <String,LongAdder> ();
+			ConcurrentHashMap <String,LongAdder> raced = reads.putIfAbsent(sectionName, bySection);
+			if (raced != null)
+				bySection = raced;
+		}
+		String key = (elementName == null) ? NULL_KEY : elementName;
+		LongAdder la = bySection.get(key);
+		if (la == null) {
+			if (keyCount.get() >= MAX_KEYS)
+				key = OTHER_KEY;
+			la = new LongAdder();
+			LongAdder raced = bySection.putIfAbsent(key, la);
+			if (raced != null)
+				la = raced;
+			else if (key != OTHER_KEY)
+				keyCount.incrementAndGet();
+		}
+		la.increment();
+		readCount.increment();
+		if (! found)
+			missCount.increment();
+	}
+
+	/**
+	 * A read returned its default value
+	 * @param invalid true if the element was there but its value could not be parsed
+	 */
+	void defaulted(boolean invalid) {
+		defaultCount.increment();
+		if (invalid)
+			invalidCount.increment();
+	}
+
+	/**
+	 * A read failed because the element's value could not be parsed
+	 */
+	void invalid() {
+		invalidCount.increment();
+	}
+
+	void loaded(File configFile, String sectionName, long nanos) {
+		histogram(loadTimes, configFile.getPath()+"#"+sectionName).record(nanos);
+	}
+
+	void loadFailed() {
+		loadFailureCount.increment();
+	}
+
+	void parsed(File configFile, long nanos) {
+		histogram(parseTimes, configFile.getPath()).record(nanos);
+	}
+
+	void parseFailed() {
+		parseFailureCount.increment();
+	}
+
+	private static LatencyHistogram histogram(ConcurrentHashMap<String,LatencyHistogram> m, String key) {
+		LatencyHistogram h = m.get(key);
+		if (h == null) {
+			h = new LatencyHistogram();
+			LatencyHistogram raced = m.putIfAbsent(key, h);
+			if (raced != null)
+				h = raced;
+		}
+		return h;
+	}
+
+
+	/*
+	 * Reporting
+	 */
+
+	public long getReadCount() {
+		return readCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	public long getDefaultCount() {
+		return defaultCount.sum();
+	}
+
+	public long getInvalidCount() {
+		return invalidCount.sum();
+	}
+
+	public long getParseFailureCount() {
+		return parseFailureCount.sum();
+	}
+
+	public long getLoadFailureCount() {
+		return loadFailureCount.sum();
+	}
+
+	/**
+	 * @return a copy of the read counts, keyed by "section/element"
+	 */
+	public Map<String,Long> getReadCounts() {
+		TreeMap <String,Long> result = new TreeMap <String,Long> ();
+		for (Map.Entry<String,ConcurrentHashMap<String,LongAdder>> s : reads.entrySet())
+			for (Map.Entry<String,LongAdder> e : s.getValue().entrySet())
+				result.put(s.getKey()+"/"+e.getKey(), Long.valueOf(e.getValue().sum()));
+		return result;
+	}
+
+	/**
+	 * @return the load time histograms, keyed by "file#section". The histograms are live, not copies
+	 */
+	public Map<String,LatencyHistogram> getLoadTimes() {
+		return Collections.unmodifiableMap(new TreeMap <String,LatencyHistogram> (loadTimes));
+	}
+
+	/**
+	 * @return the parse time histograms, keyed by file. The streaming loader's times are for reading up to the end of the
+	 * section it loads, not the whole file
+	 */
+	public Map<String,LatencyHistogram> getParseTimes() {
+		return Collections.unmodifiableMap(new TreeMap <String,LatencyHistogram> (parseTimes));
+	}
+
+	public String[] getTopKeys() {
+		ArrayList <Map.Entry<String,Long>> l = new ArrayList <Map.Entry<String,Long>> (getReadCounts().entrySet());
+		Collections.sort(l, new Comparator<Map.Entry<String,Long>>() {
+			public int compare(Map.Entry<String,Long> a, Map.Entry<String,Long> b) {
+				return b.getValue().compareTo(a.getValue());
+			}
+		});
+		String[] result = new String[Math.min(20, l.size())];
+		for (int i = 0; i < result.length; i++)
+			result[i] = l.get(i).getKey()+"="+l.get(i).getValue();
+		return result;
+	}
+
+	public String[] getLoadLatencies() {
+		ArrayList <String> result = new ArrayList <String> ();
+		for (Map.Entry<String,LatencyHistogram> e : getLoadTimes().entrySet())
+			result.add("load "+e.getKey()+": "+e.getValue());
+		for (Map.Entry<String,LatencyHistogram> e : getParseTimes().entrySet())
+			result.add("parse "+e.getKey()+": "+e.getValue());
+		return result.toArray(new String[result.size()]);
+	}
+
+	public void reset() {
+		reads.clear();
+		keyCount.set(0);
+		readCount.reset();
+		missCount.reset();
+		defaultCount.reset();
+		invalidCount.reset();
+		parseFailureCount.reset();
+		loadFailureCount.reset();
+		loadTimes.clear();
+		parseTimes.clear();
+	}
+
+	public String toString() {
+		return "ConfigMetrics: reads:"+getReadCount()+" misses:"+getMissCount()+" defaults:"+getDefaultCount()+" invalid:"+getInvalidCount()+" parse failures:"+getParseFailureCount()+" load failures:"+getLoadFailureCount();
+	}
+
+}
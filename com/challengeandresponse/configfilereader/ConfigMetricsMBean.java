@@ -0,0 +1,39 @@
+package com.challengeandresponse.configfilereader;
+
+/**
+ * The JMX management interface of ConfigMetrics, registered as
+ * com.challengeandresponse.configfilereader:type=ConfigMetrics
+ *
+ * @author jim
+ */
+public interface ConfigMetricsMBean {
+
+	public boolean isEnabled();
+
+	public void setEnabled(boolean enabled);
+
+	public long getReadCount();
+
+	public long getMissCount();
+
+	public long getDefaultCount();
+
+	public long getInvalidCount();
+
+	public long getParseFailureCount();
+
+	public long getLoadFailureCount();
+
+	/**
+	 * @return the most-read keys, as "section/element=count", busiest first
+	 */
+	public String[] getTopKeys();
+
+	/**
+	 * @return a summary of load times per "file#section", and parse times per file
+	 */
+	public String[] getLoadLatencies();
+
+	public void reset();
+
+}
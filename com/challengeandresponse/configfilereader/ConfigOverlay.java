@@ -0,0 +1,320 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Loads a section as the merge of several layers: the reader's own config file as the base, then override files,
+ * system properties and environment variables, each layer taking precedence over the ones added before it.
+ *
+ * <p>The layers are merged once, when the section is loaded (and again on each reload), into one ordinary
+ * SectionSnapshot. Reads from the reader then cost the same as from a single file, whatever the number of layers.</p>
+ *
+ * <p>Merge rules, by element name:</p>
+ * <ul>
+ * <li>An element that appears once is replaced whole (text, attributes and anything nested in it) by a later layer's element of the same name.</li>
+ * <li>Repeated elements, as read by getList(), getMap() and getMaps(), follow the MergeRule set for their name. The default,
+ * REPLACE, treats them like single elements: if a later layer has any, they replace all of the earlier ones. APPEND keeps the
+ * earlier ones and adds the later ones after them. mergeByAttribute() matches entries by an attribute, replacing those with
+ * the same value and appending the rest - the same result getMap() would give if the layers' maps were merged.</li>
+ * <li>Elements only in a later layer are added after the base's elements. A layer that doesn't have the section is skipped.</li>
+ * <li>A system property prefix+section+"."+element sets that element's text, adding the element if need be. An environment
+ * variable prefix+SECTION+"_"+ELEMENT (upper case, with anything other than letters and digits as "_") sets the text
+ * of an element that is already in the section.</li>
+ * </ul>
+ * <p>Merged elements are grouped by name, in the order each name first appears; the order within a name is kept.</p>
+ *
+ * <pre>
+ * ConfigOverlay overlay = new ConfigOverlay()
+ * 	.addFile(new File("prod.xml"))
+ * 	.addFile(new File("host.xml"), true)
+ * 	.addSystemProperties("myapp.")
+ * 	.mergeByAttribute("client", "id");
+ * ConfigFileReader cfr = new ConfigFileReader(new File("base.xml"), "section3", overlay);
+ * </pre>
+ * <p>A ConfigFileWatcher watching the reader only sees changes to the base file.</p>
+ *
+ * @author jim
+ */
+public class ConfigOverlay
+implements SectionLoader {
+
+	public enum MergeRule {
+		REPLACE,
+		APPEND
+	}
+
+	private static final int FILE = 0;
+	private static final int PROPERTIES = 1;
+	private static final int ENVIRONMENT = 2;
+
+	private static final class Layer {
+		final int kind;
+		final File file;
+		final boolean optional;
+		final String prefix;
+
+		Layer(int kind, File file, boolean optional, String prefix) {
+			this.kind = kind;
+			this.file = file;
+			this.optional = optional;
+			this.prefix = prefix;
+		}
+	}
+
+	/**
+	 * How one element name is merged: by rule, or (if keyAttribute is set) by matching that attribute
+	 */
+	private static final class Rule {
+		final MergeRule rule;
+		final String keyAttribute;
+
+		Rule(MergeRule rule, String keyAttribute) {
+			this.rule = rule;
+			this.keyAttribute = keyAttribute;
+		}
+	}
+
+	private final SectionLoader loader;
+	private final List <Layer> layers = new CopyOnWriteArrayList <Layer> ();
+	private final Map <String,Rule> rules = new ConcurrentHashMap <String,Rule> ();
+
+
+	public ConfigOverlay() {
+		this(new DOMSectionLoader());
+	}
+
+	/**
+	 * @param loader how each file layer's section is read
+	 */
+	public ConfigOverlay(SectionLoader loader) {
+		this.loader = loader;
+	}
+
+
+	/**
+	 * Add an override file. It must exist, though it need not have every section
+	 */
+	public ConfigOverlay addFile(File f) {
+		return addFile(f, false);
+	}
+
+	/**
+	 * @param optional true if the file may be missing, e.g. a host-specific file only some hosts have
+	 */
+	public ConfigOverlay addFile(File f, boolean optional) {
+		layers.add(new Layer(FILE, f, optional, null));
+		return this;
+	}
+
+	/**
+	 * Add the system properties named prefix+section+"."+element as a layer, read at each load
+	 */
+	public ConfigOverlay addSystemProperties(String prefix) {
+		layers.add(new Layer(PROPERTIES, null, true, prefix));
+		return this;
+	}
+
+	/**
+	 * Add the environment variables named prefix+SECTION+"_"+ELEMENT as a layer
+	 */
+	public ConfigOverlay addEnvironment(String prefix) {
+		layers.add(new Layer(ENVIRONMENT, null, true, prefix));
+		return this;
+	}
+
+	public ConfigOverlay setMergeRule(String elementName, MergeRule rule) {
+		rules.put(elementName, new Rule(rule, null));
+		return this;
+	}
+
+	/**
+	 * Merge the elements named elementName by the value of their attribute attributeName
+	 */
+	public ConfigOverlay mergeByAttribute(String elementName, String attributeName) {
+		rules.put(elementName, new Rule(MergeRule.REPLACE, attributeName));
+		return this;
+	}
+
+
+	public SectionSnapshot load(File configFile, String sectionName)
+	throws IOException, ElementNotFoundException {
+		SectionSnapshot merged = layer(configFile, sectionName);
+		for (Layer l : layers) {
+			switch (l.kind) {
+			case FILE:
+				if (l.optional && (! l.file.exists()))
+					continue;
+				SectionSnapshot over = layer(l.file, sectionName);
+				if (over != null)
+					merged = (merged == null) ? over : merge(merged, over);
+				break;
+			case PROPERTIES:
+				merged = properties(merged, sectionName, l.prefix);
+				break;
+			case ENVIRONMENT:
+				if (merged != null)
+					merged = environment(merged, sectionName, l.prefix);
+				break;
+			}
+		}
+		if (merged == null)
+			throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+		return merged;
+	}
+
+	/**
+	 * @return the layer's section, or null if it doesn't have one
+	 */
+	private SectionSnapshot layer(File f, String sectionName)
+	throws IOException {
+		try {
+			return loader.load(f, sectionName);
+		}
+		catch (ElementNotFoundException enfe) {
+			return null;
+		}
+	}
+
+
+	/**
+	 * @return the section with over's elements merged into base's, per the merge rules
+	 */
+	private SectionSnapshot merge(SectionSnapshot base, SectionSnapshot over) {
+		LinkedHashMap <String,List<SectionSnapshot>> byName = group(base);
+		for (Map.Entry<String,List<SectionSnapshot>> e : group(over).entrySet()) {
+			String name = e.getKey();
+			List <SectionSnapshot> earlier = byName.get(name);
+			Rule rule = rules.get(name);
+			if ((earlier == null) || (rule == null) || ((rule.keyAttribute == null) && (rule.rule == MergeRule.REPLACE)))
+				byName.put(name, e.getValue());
+			else if (rule.keyAttribute == null)
+				earlier.addAll(e.getValue());
+			else {
+				String attributeName = rule.keyAttribute;
+				HashMap <String,Integer> positions = new HashMap <String,Integer> ();
+				for (int i = earlier.size() - 1; i >= 0; i--) {
+					String key = earlier.get(i).getAttributeValue(attributeName);
+					if (key != null)
+						positions.put(key, Integer.valueOf(i));
+				}
+				for (SectionSnapshot later : e.getValue()) {
+					String key = later.getAttributeValue(attributeName);
+					Integer i = (key == null) ? null : positions.get(key);
+					if (i != null)
+						earlier.set(i.intValue(), later);
+					else {
+						if (key != null)
+							positions.put(key, Integer.valueOf(earlier.size()));
+						earlier.add(later);
+					}
+				}
+			}
+		}
+		return rebuild(over, byName);
+	}
+
+	private SectionSnapshot properties(SectionSnapshot merged, String sectionName, String prefix) {
+		String start = prefix+sectionName+".";
+		Properties p = System.getProperties();
+		LinkedHashMap <String,List<SectionSnapshot>> byName = null;
+		for (String key : p.stringPropertyNames()) {
+			if (! key.startsWith(start))
+				continue;
+			if (byName == null)
+				byName = (merged == null) ? new LinkedHashMap <String,List<SectionSnapshot>> () : group(merged);
+			String name = key.substring(start.length());
+			byName.put(name, withText(byName.get(name), name, p.getProperty(key)));
+		}
+		if (byName == null)
+			return merged;
+		return rebuild((merged == null) ? new SectionSnapshot(sectionName, "", SectionSnapshot.NO_STRINGS, SectionSnapshot.NO_STRINGS, SectionSnapshot.NO_CHILDREN) : merged, byName);
+	}
+
+	private SectionSnapshot environment(SectionSnapshot merged, String sectionName, String prefix) {
+		LinkedHashMap <String,List<SectionSnapshot>> byName = null;
+		for (String name : merged.elementNames()) {
+			String value = System.getenv(envName(prefix+sectionName+"_"+name));
+			if (value == null)
+				continue;
+			if (byName == null)
+				byName = group(merged);
+			byName.put(name, withText(byName.get(name), name, value));
+		}
+		return (byName == null) ? merged : rebuild(merged, byName);
+	}
+
+	private static String envName(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = Character.toUpperCase(s.charAt(i));
+			sb.append((((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9'))) ? c : '_');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return a one-element list: the first of the existing elements (if any) with its text replaced
+	 */
+	private static List<SectionSnapshot> withText(List<SectionSnapshot> existing, String name, String text) {
+		SectionSnapshot e;
+		if ((existing == null) || existing.isEmpty())
+			e = new SectionSnapshot(Symbols.name(name), text, SectionSnapshot.NO_STRINGS, SectionSnapshot.NO_STRINGS, SectionSnapshot.NO_CHILDREN);
+		else {
+			SectionSnapshot old = existing.get(0);
+			SectionSnapshot[] children = new SectionSnapshot[old.size()];
+			for (int i = 0; i < children.length; i++)
+				children[i] = old.childAt(i);
+			e = new SectionSnapshot(old.getName(), text, attributeNames(old), attributeValues(old), children);
+		}
+		ArrayList <SectionSnapshot> l = new ArrayList <SectionSnapshot> (1);
+		l.add(e);
+		return l;
+	}
+
+
+	/**
+	 * @return the children of the section, grouped by name in order of first appearance
+	 */
+	private static LinkedHashMap<String,List<SectionSnapshot>> group(SectionSnapshot se) {
+		LinkedHashMap <String,List<SectionSnapshot>> byName = new LinkedHashMap <String,List<SectionSnapshot>> ();
+		for (int i = 0; i < se.size(); i++) {
+			SectionSnapshot c = se.childAt(i);
+			List <SectionSnapshot> l = byName.get(c.getName());
+			if (l == null) {
+				l = new ArrayList <SectionSnapshot> ();
+				byName.put(c.getName(), l);
+			}
+			l.add(c);
+		}
+		return byName;
+	}
+
+	/**
+	 * @return a new section with the name, text and attributes of se, and the given children
+	 */
+	private static SectionSnapshot rebuild(SectionSnapshot se, Map<String,List<SectionSnapshot>> byName) {
+		ArrayList <SectionSnapshot> children = new ArrayList <SectionSnapshot> ();
+		for (List<SectionSnapshot> l : byName.values())
+			children.addAll(l);
+		return new SectionSnapshot(se.getName(), se.getText(), attributeNames(se), attributeValues(se), children.toArray(new SectionSnapshot[children.size()]));
+	}
+
+	private static String[] attributeNames(SectionSnapshot se) {
+		String[] result = (se.attributeCount() == 0) ? SectionSnapshot.NO_STRINGS : new String[se.attributeCount()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = se.attributeName(i);
+		return result;
+	}
+
+	private static String[] attributeValues(SectionSnapshot se) {
+		String[] result = (se.attributeCount() == 0) ? SectionSnapshot.NO_STRINGS : new String[se.attributeCount()];
+		for (int i = 0; i < result.length; i++)
+			result[i] = se.attributeValue(i);
+		return result;
+	}
+
+}
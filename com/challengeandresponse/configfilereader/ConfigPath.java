@@ -0,0 +1,322 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A compiled path to elements or attribute values nested below an element, for reading them without stepping.
+ *
+ * <p>A path is a list of element names separated by '/', each optionally narrowed by one predicate, and may end
+ * with "@attribute" to select an attribute's value instead of an element:</p>
+ * <pre>
+ * subsection[name='zach']/age	the age of the subsection whose child element name is zach
+ * client[@id='two']		the client whose attribute id is two
+ * flavor[.='vanilla']		the flavor whose text is vanilla
+ * subsection[2]/name		the name of the second subsection (counting from 1)
+ * client/@id			the id attribute of each client
+ * </pre>
+ * <p>Paths are relative to the element they are read from - for a ConfigFileReader, its element in hand - and can
+ * be passed anywhere an element name is taken by the get___, find___, ___OrDefault and getList() methods of
+ * ConfigFileReader and SectionView. Element names can't contain '/', '[' or '@', so plain names are never taken
+ * for paths.</p>
+ *
+ * <p>Each path is parsed once, by compile(), and the compiled path is kept in a bounded cache that is read without
+ * locking, so threads reading the same paths don't contend. When the cache is full, a clock sweep evicts a path that
+ * hasn't been used since the sweep last passed it, so paths in regular use stay cached however many one-off paths
+ * (e.g. with a request's id in a predicate) are compiled. Reading it walks
+ * the snapshots directly. Predicates on an attribute, the text, or a child's text are answered from the parent
+ * snapshot's secondary index (built on first use, see SectionSnapshot.findSlotsByAttribute()) rather than a scan.</p>
+ *
+ * @author jim
+ */
+public final class ConfigPath {
+
+	/**
+	 * The most compiled paths kept by compile(). Each path compiled beyond this evicts one not used recently
+	 */
+	public static final int MAX_CACHED = 1024;
+
+	// read without locking; added to and evicted from only while holding CACHE's lock, so it never exceeds MAX_CACHED
+	private static final ConcurrentHashMap <String,ConfigPath> CACHE = new ConcurrentHashMap <String,ConfigPath> (64);
+	private static Iterator <ConfigPath> hand = null;	// the clock hand, guarded by CACHE
+
+	// the section a failed lookup resolves to, so it finds nothing rather than something in the wrong element
+	static final SectionSnapshot NOWHERE = new SectionSnapshot("", "", SectionSnapshot.NO_STRINGS, SectionSnapshot.NO_STRINGS, SectionSnapshot.NO_CHILDREN);
+
+	private static final int ALL = 0;	// no predicate
+	private static final int INDEXED = 1;	// [@a='v'], [.='v'] or [child='v']
+	private static final int POSITION = 2;	// [n]
+	private static final int ATTRIBUTE = 3;	// @a, last step only
+
+	private static final class Step {
+		final int kind;
+		final String name;
+		final String indexKey;
+		final String value;
+		final int position;
+
+		Step(int kind, String name, String indexKey, String value, int position) {
+			this.kind = kind;
+			this.name = name;
+			this.indexKey = indexKey;
+			this.value = value;
+			this.position = position;
+		}
+	}
+
+	private final String path;
+	private final Step[] steps;
+	// set by compile() each time the path is reused, cleared as the clock hand passes; racy by design, since it is
+	// only a hint. A path compiled once and never again is the first to go
+	private boolean referenced = false;
+
+
+	private ConfigPath(String path, Step[] steps) {
+		this.path = path;
+		this.steps = steps;
+	}
+
+
+	/**
+	 * @return the compiled path, from the cache if it has been compiled before
+	 * @throws IllegalArgumentException if the path is malformed
+	 */
+	public static ConfigPath compile(String path) {
+		ConfigPath cp = CACHE.get(path);
+		if (cp != null) {
+			if (! cp.referenced)
+				cp.referenced = true;
+			return cp;
+		}
+		cp = parse(path);
+		synchronized (CACHE) {
+			ConfigPath earlier = CACHE.get(path);
+			if (earlier != null)
+				return earlier;
+			while (CACHE.size() >= MAX_CACHED) {
+				if ((hand == null) || (! hand.hasNext()))
+					hand = CACHE.values().iterator();
+				ConfigPath c = hand.next();
+				if (c.referenced)
+					c.referenced = false;
+				else
+					hand.remove();
+			}
+			CACHE.put(path, cp);
+		}
+		return cp;
+	}
+
+	/**
+	 * @return true if s is a path rather than a plain element name. False for null
+	 */
+	public static boolean isPath(String s) {
+		if (s == null)
+			return false;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c == '/') || (c == '[') || (c == '@'))
+				return true;
+		}
+		return false;
+	}
+
+	private static ConfigPath parse(String path) {
+		ArrayList <Step> steps = new ArrayList <Step> ();
+		int i = 0;
+		int n = path.length();
+		while (i <= n) {
+			int end = stepEnd(path, i);
+			String step = path.substring(i, end).trim();
+			if (step.length() == 0)
+				throw malformed(path, "empty step");
+			if (step.charAt(0) == '@') {
+				if (end != n)
+					throw malformed(path, "an attribute can only be the last step");
+				steps.add(new Step(ATTRIBUTE, Symbols.name(step.substring(1).trim()), null, null, 0));
+			}
+			else
+				steps.add(step(path, step));
+			i = end + 1;
+		}
+		return new ConfigPath(path, steps.toArray(new Step[steps.size()]));
+	}
+
+	/**
+	 * @return the index of the '/' ending the step that starts at i (not counting any inside a quoted value), or the end of the path
+	 */
+	private static int stepEnd(String path, int i) {
+		char quote = 0;
+		for (; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			}
+			else if ((c == '\'') || (c == '"'))
+				quote = c;
+			else if (c == '/')
+				return i;
+		}
+		return path.length();
+	}
+
+	private static Step step(String path, String step) {
+		int open = step.indexOf('[');
+		if (open < 0)
+			return new Step(ALL, Symbols.name(step), null, null, 0);
+		if (! step.endsWith("]"))
+			throw malformed(path, "unclosed [ in "+step);
+		String name = Symbols.name(step.substring(0, open).trim());
+		String predicate = step.substring(open + 1, step.length() - 1).trim();
+		int eq = predicate.indexOf('=');
+		if (eq < 0) {
+			try {
+				int position = Integer.parseInt(predicate);
+				if (position < 1)
+					throw malformed(path, "positions count from 1: "+step);
+				return new Step(POSITION, name, null, null, position - 1);
+			}
+			catch (NumberFormatException nfe) {
+				throw malformed(path, "expected [n] or [key='value'] in "+step);
+			}
+		}
+		String key = predicate.substring(0, eq).trim();
+		String value = predicate.substring(eq + 1).trim();
+		if ((value.length() < 2) || ((value.charAt(0) != '\'') && (value.charAt(0) != '"')) || (value.charAt(value.length() - 1) != value.charAt(0)))
+			throw malformed(path, "the value must be quoted in "+step);
+		value = value.substring(1, value.length() - 1);
+		String indexKey;
+		if (key.startsWith("@"))
+			indexKey = Symbols.name(key.substring(1).trim());
+		else if (key.equals(".") || key.equals("text()"))
+			indexKey = SectionSnapshot.textIndexKey();
+		else
+			indexKey = SectionSnapshot.childIndexKey(key);
+		return new Step(INDEXED, name, indexKey, value, 0);
+	}
+
+	private static IllegalArgumentException malformed(String path, String why) {
+		return new IllegalArgumentException("ConfigFileReader:Bad path '"+path+"': "+why);
+	}
+
+
+	/**
+	 * @return the first element (or attribute, as an element) the path selects from the given element, in document order, or null if none
+	 */
+	public SectionSnapshot selectFirst(SectionSnapshot from) {
+		SectionSnapshot parent = parentOf(from);
+		if (parent == NOWHERE)
+			return null;
+		return parent.childAt(slotIn(parent));
+	}
+
+	/**
+	 * @return every element (or attribute, as an element) the path selects from the given element, in document order
+	 */
+	public List<SectionSnapshot> select(SectionSnapshot from) {
+		ArrayList <SectionSnapshot> result = new ArrayList <SectionSnapshot> ();
+		collect(from, 0, result);
+		return result;
+	}
+
+	/**
+	 * @return the element holding the first match of the last step - for an attribute, the snapshot of the owner's
+	 * attributes (SectionSnapshot.attributes()) - or NOWHERE if the path selects nothing
+	 */
+	SectionSnapshot parentOf(SectionSnapshot from) {
+		SectionSnapshot p = find(from, 0);
+		return (p == null) ? NOWHERE : p;
+	}
+
+	/**
+	 * @return the slot of the last step's first match in parent, from parentOf(), or -1
+	 */
+	int slotIn(SectionSnapshot parent) {
+		// NOWHERE is shared, so looking anything up in it would grow its indexes for the life of the process
+		if (parent == NOWHERE)
+			return -1;
+		Step s = steps[steps.length - 1];
+		int[] slots;
+		switch (s.kind) {
+		case INDEXED:
+			slots = parent.findSlots(s.name, s.indexKey, s.value);
+			return (slots.length == 0) ? -1 : slots[0];
+		case POSITION:
+			return (s.position < parent.countOf(s.name)) ? parent.slotOf(s.name, s.position) : -1;
+		default:
+			return parent.slotOf(s.name);
+		}
+	}
+
+	private SectionSnapshot find(SectionSnapshot se, int i) {
+		Step s = steps[i];
+		boolean last = (i == steps.length - 1);
+		if (s.kind == ATTRIBUTE) {
+			SectionSnapshot a = se.attributes();
+			return (a.slotOf(s.name) >= 0) ? a : null;
+		}
+		if (s.kind == POSITION) {
+			if (s.position >= se.countOf(s.name))
+				return null;
+			return last ? se : find(se.childAt(se.slotOf(s.name, s.position)), i + 1);
+		}
+		if (s.kind == INDEXED) {
+			int[] slots = se.findSlots(s.name, s.indexKey, s.value);
+			if (last)
+				return (slots.length == 0) ? null : se;
+			for (int slot : slots) {
+				SectionSnapshot found = find(se.childAt(slot), i + 1);
+				if (found != null)
+					return found;
+			}
+			return null;
+		}
+		int n = se.countOf(s.name);
+		if (last)
+			return (n == 0) ? null : se;
+		for (int k = 0; k < n; k++) {
+			SectionSnapshot found = find(se.childAt(se.slotOf(s.name, k)), i + 1);
+			if (found != null)
+				return found;
+		}
+		return null;
+	}
+
+	private void collect(SectionSnapshot se, int i, List<SectionSnapshot> out) {
+		Step s = steps[i];
+		boolean last = (i == steps.length - 1);
+		if (s.kind == ATTRIBUTE) {
+			SectionSnapshot a = se.attributes();
+			int slot = a.slotOf(s.name);
+			if (slot >= 0)
+				out.add(a.childAt(slot));
+		}
+		else if (s.kind == POSITION) {
+			if (s.position < se.countOf(s.name))
+				collect(se.childAt(se.slotOf(s.name, s.position)), i, last, out);
+		}
+		else if (s.kind == INDEXED) {
+			for (int slot : se.findSlots(s.name, s.indexKey, s.value))
+				collect(se.childAt(slot), i, last, out);
+		}
+		else {
+			int n = se.countOf(s.name);
+			for (int k = 0; k < n; k++)
+				collect(se.childAt(se.slotOf(s.name, k)), i, last, out);
+		}
+	}
+
+	private void collect(SectionSnapshot match, int i, boolean last, List<SectionSnapshot> out) {
+		if (last)
+			out.add(match);
+		else
+			collect(match, i + 1, out);
+	}
+
+
+	public String toString() {
+		return path;
+	}
+
+}
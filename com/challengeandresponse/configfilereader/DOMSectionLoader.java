@@ -0,0 +1,84 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.jdom.*;
+import org.jdom.input.SAXBuilder;
+
+/**
+ * The original way of loading a section: build a JDOM Document of the whole file with SAXBuilder,
+ * then compile the requested section. The Document is dropped once the section is compiled.
+ *
+ * @author jim
+ */
+public class DOMSectionLoader
+implements SectionLoader {
+
+	private final boolean dedupValues;
+
+
+	public DOMSectionLoader() {
+		this(Symbols.dedupValuesByDefault());
+	}
+
+	/**
+	 * @param dedupValues true to share one copy of each distinct element text and attribute value within a section,
+	 * which saves memory on sections where many elements repeat the same values
+	 */
+	public DOMSectionLoader(boolean dedupValues) {
+		this.dedupValues = dedupValues;
+	}
+
+
+	public SectionSnapshot load(File configFile, String sectionName)
+	throws IOException, ElementNotFoundException {
+		Element e = parse(configFile).getRootElement().getChild(sectionName);
+		if (e == null)
+			throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+		return SectionSnapshot.compile(e, new Symbols(dedupValues));
+	}
+
+	/**
+	 * Parse the whole file and compile its root element, with every section under it
+	 * @param configFile a File pointing to the configuration file to process
+	 * @return the compiled root element
+	 */
+	public SectionSnapshot loadDocument(File configFile)
+	throws IOException {
+		return SectionSnapshot.compile(parse(configFile).getRootElement(), new Symbols(dedupValues));
+	}
+
+	private Document parse(File configFile)
+	throws IOException {
+		SAXBuilder saxb = new SAXBuilder();
+		long start = System.nanoTime();
+		try {
+			Document d = saxb.build(configFile);
+			if (ConfigMetrics.enabled)
+				ConfigMetrics.getInstance().parsed(configFile, System.nanoTime() - start);
+			return d;
+		}
+		catch (JDOMException jdoe) {
+			if (ConfigMetrics.enabled)
+				ConfigMetrics.getInstance().parseFailed();
+			throw new IOException("ConfigFileReader:DOM exception building configuration from file: "+configFile+" " + jdoe.getMessage());
+		}
+		catch (IOException ioe) {
+			throw new IOException("ConfigFileReader:IO exception building configuration from file: "+configFile+" "+ioe.getMessage());
+		}
+	}
+
+	/**
+	 * @return the named section of a compiled document
+	 * @throws ElementNotFoundException if the document has no section named sectionName
+	 */
+	static SectionSnapshot section(SectionSnapshot document, String sectionName)
+	throws ElementNotFoundException {
+		int slot = document.slotOf(sectionName);
+		if (slot < 0)
+			throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+		return document.childAt(slot);
+	}
+
+}
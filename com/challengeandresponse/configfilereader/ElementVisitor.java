@@ -0,0 +1,25 @@
+package com.challengeandresponse.configfilereader;
+
+/**
+ * Called once for each matching element, in document order, by the forEach methods.
+ *
+ * <pre>
+ * cfr.forEach("client", new ElementVisitor() {
+ *	public boolean visit(ConfigEntry e) {
+ *		secrets.put(e.getAttributeValue("id"), e.getText());
+ *		return true;
+ *	}
+ * });
+ * </pre>
+ *
+ * @author jim
+ */
+public interface ElementVisitor {
+
+	/**
+	 * @param entry the element. It may be reused for the next element once this call returns
+	 * @return true to carry on to the next element, false to stop
+	 */
+	public boolean visit(ConfigEntry entry);
+
+}
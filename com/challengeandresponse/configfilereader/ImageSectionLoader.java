@@ -0,0 +1,81 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loads sections from a compiled binary image of the config file (see ConfigImageCompiler) instead of parsing the XML.
+ * The image is memory-mapped, the section is found through the root's child index, and only that section's
+ * nodes and strings are decoded, so the load costs about the same however big the file is.
+ *
+ * <p>Before the image is used its source checksum is compared with the XML file. If the image is missing,
+ * damaged, or was compiled from a different version of the XML, it is recompiled from the XML first.</p>
+ *
+ * <pre>
+ * ConfigFileReader cfr = new ConfigFileReader(f,"section1",new ImageSectionLoader(new File("config.cfri")));
+ * </pre>
+ *
+ * @author jim
+ */
+public class ImageSectionLoader
+implements SectionLoader {
+
+	private final File imageFile;
+	private final boolean verify;
+
+	/**
+	 * @param imageFile where the compiled image of the config file is (or should be) kept
+	 */
+	public ImageSectionLoader(File imageFile) {
+		this(imageFile, true);
+	}
+
+	/**
+	 * @param imageFile where the compiled image of the config file is (or should be) kept
+	 * @param verify if false, an existing image is trusted without checksumming the XML - only for images known to be current, e.g. built in the same deployment step
+	 */
+	public ImageSectionLoader(File imageFile, boolean verify) {
+		this.imageFile = imageFile;
+		this.verify = verify;
+	}
+
+
+	public SectionSnapshot load(File configFile, String sectionName)
+	throws IOException, ElementNotFoundException {
+		ConfigImage ci = open(configFile);
+		SectionSnapshot se;
+		try {
+			se = ci.readSection(sectionName);
+		}
+		catch (IOException ioe) {
+			// damaged past the header - rebuild it and try once more
+			ConfigImageCompiler.compile(configFile, imageFile);
+			se = ConfigImage.map(imageFile).readSection(sectionName);
+		}
+		if (se == null)
+			throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+		return se;
+	}
+
+	/**
+	 * @return a current image of configFile, compiling one if need be
+	 */
+	private ConfigImage open(File configFile)
+	throws IOException {
+		if (imageFile.exists()) {
+			try {
+				ConfigImage ci = ConfigImage.map(imageFile);
+				if (! verify)
+					return ci;
+				if ((ci.getSourceLength() == configFile.length()) && (ci.getSourceChecksum() == ConfigImage.checksum(configFile)))
+					return ci;
+			}
+			catch (IOException ioe) {
+				// damaged or from another version - fall through and rebuild it
+			}
+		}
+		ConfigImageCompiler.compile(configFile, imageFile);
+		return ConfigImage.map(imageFile);
+	}
+
+}
@@ -0,0 +1,441 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.stream.*;
+
+/**
+ * Loads sections through an index of where each section starts and ends in the file, so only the sections that are
+ * asked for are ever parsed.
+ *
+ * <p>The first load from a file scans its bytes once - without decoding characters or building anything - and records
+ * the byte range of every child of the root element. Each section is parsed from its own range the first time it is
+ * requested, and the result is kept with the index. Every ConfigFileReader using the same loader (e.g. the shared one)
+ * then reuses the index and the parsed sections, so startup costs one scan plus the sections actually used, rather
+ * than a full parse per reader. The index is rebuilt if the file's modification time or size changes. Indexes are
+ * kept for a bounded number of files, least recently used first out.</p>
+ *
+ * <p>The scan understands comments, processing instructions, CDATA and a DOCTYPE, and handles files in UTF-8,
+ * ASCII and the single-byte ISO-8859 and windows encodings. Files in other encodings (e.g. UTF-16) are loaded
+ * with a StreamingSectionLoader instead.</p>
+ *
+ * <pre>
+ * ConfigFileReader cfr1 = new ConfigFileReader(f,"section1",IndexedSectionLoader.getShared());
+ * ConfigFileReader cfr3 = new ConfigFileReader(f,"section3",IndexedSectionLoader.getShared()); // parses only section3
+ * </pre>
+ *
+ * @author jim
+ */
+public class IndexedSectionLoader
+implements SectionLoader {
+
+	/**
+	 * System property to set how many files' indexes the shared loader keeps
+	 */
+	public static final String SHARED_MAX_FILES_PROPERTY = "com.challengeandresponse.configfilereader.indexedFiles";
+	public static final int DEFAULT_MAX_FILES = 64;
+
+	private static final IndexedSectionLoader SHARED = new IndexedSectionLoader(Symbols.dedupValuesByDefault(),
+			Integer.getInteger(SHARED_MAX_FILES_PROPERTY, DEFAULT_MAX_FILES).intValue());
+
+	/**
+	 * The section index of one version of one file, and the sections parsed from it so far
+	 */
+	private static final class Index {
+		final long lastModified;
+		final long length;
+		final boolean usable;	// false if the file's encoding can't be scanned byte-wise
+		final byte[] header;	// everything up to the end of the root start tag
+		final byte[] trailer;	// the root end tag
+		final Map <String,long[]> ranges;	// section name -> (start, end) byte offsets
+		final ConcurrentHashMap <String,SectionSnapshot> sections = new ConcurrentHashMap <String,SectionSnapshot> ();
+
+		Index(long lastModified, long length, boolean usable, byte[] header, byte[] trailer, Map<String,long[]> ranges) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.usable = usable;
+			this.header = header;
+			this.trailer = trailer;
+			this.ranges = ranges;
+		}
+	}
+
+	private final boolean dedupValues;
+	private final int maxFiles;
+	// guarded by itself. Least recently used first, so the oldest file's index is dropped when there are too many
+	private final LinkedHashMap <String,Index> indexes = new LinkedHashMap <String,Index> (16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		protected boolean removeEldestEntry(Map.Entry<String,Index> eldest) {
+			return size() > maxFiles;
+		}
+	};
+
+
+	public IndexedSectionLoader() {
+		this(Symbols.dedupValuesByDefault(), DEFAULT_MAX_FILES);
+	}
+
+	/**
+	 * @param dedupValues true to share one copy of each distinct element text and attribute value within a section
+	 */
+	public IndexedSectionLoader(boolean dedupValues) {
+		this(dedupValues, DEFAULT_MAX_FILES);
+	}
+
+	/**
+	 * @param maxFiles the most files to keep indexes (and the sections parsed through them) for. Beyond that,
+	 * the least recently used file's are dropped, and rebuilt if it is loaded from again
+	 */
+	public IndexedSectionLoader(boolean dedupValues, int maxFiles) {
+		if (maxFiles < 1)
+			throw new IllegalArgumentException("IndexedSectionLoader: maxFiles must be at least 1, not "+maxFiles);
+		this.dedupValues = dedupValues;
+		this.maxFiles = maxFiles;
+	}
+
+	/**
+	 * @return the loader shared by the whole process, so readers anywhere in it share indexes and parsed sections
+	 */
+	public static IndexedSectionLoader getShared() {
+		return SHARED;
+	}
+
+
+	public SectionSnapshot load(File configFile, String sectionName)
+	throws IOException, ElementNotFoundException {
+		Index ix = index(configFile);
+		if (! ix.usable)
+			return new StreamingSectionLoader(dedupValues).load(configFile, sectionName);
+		SectionSnapshot se = ix.sections.get(sectionName);
+		if (se != null)
+			return se;
+		long[] range = ix.ranges.get(sectionName);
+		if (range == null)
+			throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+		se = parse(configFile, ix, sectionName, range);
+		SectionSnapshot raced = ix.sections.putIfAbsent(sectionName, se);
+		return (raced == null) ? se : raced;
+	}
+
+	/**
+	 * @return the names of the sections in the file, in document order. Empty for a file that can't be indexed
+	 */
+	public List<String> getSectionNames(File configFile)
+	throws IOException {
+		return new ArrayList <String> (index(configFile).ranges.keySet());
+	}
+
+	/**
+	 * Drop the index, and the sections parsed through it, for one file
+	 */
+	public void invalidate(File configFile)
+	throws IOException {
+		String path = configFile.getCanonicalPath();
+		synchronized (indexes) {
+			indexes.remove(path);
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (indexes) {
+			indexes.clear();
+		}
+	}
+
+	/**
+	 * @return the number of files with an index kept now
+	 */
+	public int size() {
+		synchronized (indexes) {
+			return indexes.size();
+		}
+	}
+
+
+	/**
+	 * @return the index of the file as it is now, scanning it if it has changed or not been seen before
+	 */
+	private Index index(File configFile)
+	throws IOException {
+		File f = configFile.getCanonicalFile();
+		String path = f.getPath();
+		long lastModified = f.lastModified();
+		long length = f.length();
+		Index ix;
+		synchronized (indexes) {
+			ix = indexes.get(path);
+		}
+		if ((ix != null) && (ix.lastModified == lastModified) && (ix.length == length))
+			return ix;
+		// concurrent first loads may both scan; the scan is cheap and either result is correct
+		ix = scan(f, lastModified, length);
+		synchronized (indexes) {
+			indexes.put(path, ix);
+		}
+		return ix;
+	}
+
+	/**
+	 * Parse one section on its own, from the file's header (which carries the XML declaration, any DOCTYPE,
+	 * and the root element's namespace declarations), the section's bytes, and the root end tag
+	 */
+	private SectionSnapshot parse(File configFile, Index ix, String sectionName, long[] range)
+	throws IOException, ElementNotFoundException {
+		byte[] section = new byte[(int) (range[1] - range[0])];
+		RandomAccessFile raf = new RandomAccessFile(configFile, "r");
+		try {
+			raf.seek(range[0]);
+			raf.readFully(section);
+		}
+		finally {
+			raf.close();
+		}
+		if ((configFile.lastModified() != ix.lastModified) || (configFile.length() != ix.length)) {
+			// changed under us - start again from a fresh index
+			return load(configFile, sectionName);
+		}
+
+		InputStream in = new SequenceInputStream(Collections.enumeration(Arrays.<InputStream>asList(
+				new ByteArrayInputStream(ix.header), new ByteArrayInputStream(section), new ByteArrayInputStream(ix.trailer))));
+		XMLStreamReader xsr = null;
+		try {
+			xsr = StreamingSectionLoader.createReader(in);
+			if (! StreamingSectionLoader.seekSection(xsr, sectionName))
+				throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+			return StreamingSectionLoader.readElement(xsr, new Symbols(dedupValues));
+		}
+		catch (XMLStreamException xse) {
+			if (ConfigMetrics.enabled)
+				ConfigMetrics.getInstance().parseFailed();
+			throw new IOException("ConfigFileReader:XML exception building configuration from file: "+configFile+" "+xse.getMessage());
+		}
+		finally {
+			StreamingSectionLoader.close(xsr, in);
+		}
+	}
+
+
+	/*
+	 * The scanner. It works on the raw bytes, which is safe for encodings where every byte below 0x80 is ASCII.
+	 */
+
+	private static Index scan(File f, long lastModified, long length)
+	throws IOException {
+		long start = System.nanoTime();
+		ByteBuffer bb;
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel fc = raf.getChannel();
+			bb = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+		}
+		finally {
+			raf.close();
+		}
+		if (! byteScannable(bb))
+			return new Index(lastModified, length, false, null, null, Collections.<String,long[]>emptyMap());
+
+		int n = bb.limit();
+		LinkedHashMap <String,long[]> ranges = new LinkedHashMap <String,long[]> ();
+		String rootName = null;
+		int rootEnd = -1;
+		int depth = 0;
+		int sectionStart = -1;
+		String sectionName = null;
+		int i = 0;
+		while (i < n) {
+			if (bb.get(i) != '<') {
+				i++;
+				continue;
+			}
+			if (startsWith(bb, i, "<?"))
+				i = skipPast(bb, i, "?>");
+			else if (startsWith(bb, i, "<!--"))
+				i = skipPast(bb, i, "-->");
+			else if (startsWith(bb, i, "<![CDATA["))
+				i = skipPast(bb, i, "]]>");
+			else if (startsWith(bb, i, "<!"))
+				i = skipDeclaration(bb, i);
+			else if (startsWith(bb, i, "</")) {
+				i = skipTag(bb, i);
+				depth--;
+				if ((depth == 1) && (sectionName != null)) {
+					if (! ranges.containsKey(sectionName))
+						ranges.put(sectionName, new long[] {sectionStart, i});
+					sectionName = null;
+				}
+				else if (depth == 0)
+					break;
+			}
+			else {
+				int tagStart = i;
+				String name = localName(bb, i + 1);
+				i = skipTag(bb, i);
+				boolean empty = (bb.get(i - 2) == '/');
+				if (depth == 0) {
+					rootName = qualifiedName(bb, tagStart + 1);
+					rootEnd = i;
+					if (empty)
+						break;
+					depth = 1;
+				}
+				else if (depth == 1) {
+					if (empty) {
+						if (! ranges.containsKey(name))
+							ranges.put(name, new long[] {tagStart, i});
+					}
+					else {
+						sectionName = name;
+						sectionStart = tagStart;
+						depth = 2;
+					}
+				}
+				else if (! empty)
+					depth++;
+			}
+		}
+		if (rootName == null)
+			throw new IOException("ConfigFileReader:XML exception building configuration from file: "+f+" no root element");
+
+		byte[] header = new byte[rootEnd];
+		bb.get(0, header);
+		if (bb.get(rootEnd - 2) == '/') {
+			// <root/> - reopen it so sections can't be found inside it
+			header[rootEnd - 2] = ' ';
+		}
+		byte[] trailer = ("</"+rootName+">").getBytes("UTF-8");
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().parsed(f, System.nanoTime() - start);
+		return new Index(lastModified, length, true, header, trailer, ranges);
+	}
+
+	/**
+	 * @return true if the file has no byte order mark other than UTF-8's, and declares no encoding or one we can scan
+	 */
+	private static boolean byteScannable(ByteBuffer bb) {
+		int n = bb.limit();
+		if (n >= 2) {
+			int b0 = bb.get(0) & 0xff;
+			int b1 = bb.get(1) & 0xff;
+			if ((b0 == 0xfe) || (b0 == 0xff) || (b0 == 0) || (b1 == 0))
+				return false;
+		}
+		int p = (n >= 3) && ((bb.get(0) & 0xff) == 0xef) ? 3 : 0;
+		if (! startsWith(bb, p, "<?xml"))
+			return true;
+		int end = skipPast(bb, p, "?>");
+		StringBuilder decl = new StringBuilder();
+		for (int i = p; i < end; i++)
+			decl.append((char) (bb.get(i) & 0xff));
+		int e = decl.indexOf("encoding");
+		if (e < 0)
+			return true;
+		String enc = decl.substring(e).replaceAll("^encoding\\s*=\\s*[\"']([^\"']*)[\"'].*$", "$1").toUpperCase(Locale.ROOT);
+		return enc.equals("UTF-8") || enc.equals("UTF8") || enc.equals("US-ASCII") || enc.equals("ASCII")
+				|| enc.startsWith("ISO-8859-") || enc.startsWith("WINDOWS-125") || enc.startsWith("LATIN");
+	}
+
+	private static boolean startsWith(ByteBuffer bb, int i, String s) {
+		if (i + s.length() > bb.limit())
+			return false;
+		for (int j = 0; j < s.length(); j++)
+			if (bb.get(i + j) != s.charAt(j))
+				return false;
+		return true;
+	}
+
+	/**
+	 * @return the offset just past the next occurrence of end, or the end of the buffer
+	 */
+	private static int skipPast(ByteBuffer bb, int i, String end) {
+		int n = bb.limit() - end.length();
+		for (; i <= n; i++)
+			if (startsWith(bb, i, end))
+				return i + end.length();
+		return bb.limit();
+	}
+
+	/**
+	 * Skip a start or end tag, minding quoted attribute values
+	 * @return the offset just past its closing '>'
+	 */
+	private static int skipTag(ByteBuffer bb, int i) {
+		int n = bb.limit();
+		byte quote = 0;
+		for (i++; i < n; i++) {
+			byte b = bb.get(i);
+			if (quote != 0) {
+				if (b == quote)
+					quote = 0;
+			}
+			else if ((b == '"') || (b == '\''))
+				quote = b;
+			else if (b == '>')
+				return i + 1;
+		}
+		return n;
+	}
+
+	/**
+	 * Skip a DOCTYPE or other declaration, including an internal subset in [ ]
+	 */
+	private static int skipDeclaration(ByteBuffer bb, int i) {
+		int n = bb.limit();
+		int brackets = 0;
+		byte quote = 0;
+		for (i += 2; i < n; i++) {
+			byte b = bb.get(i);
+			if (quote != 0) {
+				if (b == quote)
+					quote = 0;
+			}
+			else if ((b == '"') || (b == '\''))
+				quote = b;
+			else if (startsWith(bb, i, "<!--"))
+				i = skipPast(bb, i, "-->") - 1;
+			else if (b == '[')
+				brackets++;
+			else if (b == ']')
+				brackets--;
+			else if ((b == '>') && (brackets <= 0))
+				return i + 1;
+		}
+		return n;
+	}
+
+	private static int nameEnd(ByteBuffer bb, int i) {
+		int n = bb.limit();
+		while (i < n) {
+			byte b = bb.get(i);
+			if ((b == ' ') || (b == '\t') || (b == '\r') || (b == '\n') || (b == '/') || (b == '>'))
+				break;
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the name of the tag starting at i, without any namespace prefix, as StAX's getLocalName() reports it
+	 */
+	private static String localName(ByteBuffer bb, int i) {
+		String name = qualifiedName(bb, i);
+		return Symbols.name(name.substring(name.indexOf(':') + 1));
+	}
+
+	private static String qualifiedName(ByteBuffer bb, int i) {
+		int end = nameEnd(bb, i);
+		byte[] b = new byte[end - i];
+		bb.get(i, b);
+		try {
+			return new String(b, "UTF-8");
+		}
+		catch (UnsupportedEncodingException uee) {
+			throw new IllegalStateException(uee);
+		}
+	}
+
+}
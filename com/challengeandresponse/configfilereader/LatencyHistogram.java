@@ -0,0 +1,84 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of durations, with one bucket per power of two nanoseconds. Recording is a couple of
+ * LongAdder increments; percentiles are reported as the upper bound of the bucket they fall in.
+ *
+ * @author jim
+ */
+public final class LatencyHistogram {
+
+	private final LongAdder[] buckets = new LongAdder[64];
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++)
+			buckets[i] = new LongAdder();
+	}
+
+	public void record(long nanos) {
+		if (nanos < 0)
+			nanos = 0;
+		buckets[64 - Long.numberOfLeadingZeros(nanos | 1) - 1].increment();
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getTotalNanos() {
+		return totalNanos.sum();
+	}
+
+	public long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	public double getMeanNanos() {
+		long n = count.sum();
+		return (n == 0) ? 0.0 : (double) totalNanos.sum() / n;
+	}
+
+	/**
+	 * @param fraction e.g. 0.99 for the 99th percentile
+	 * @return an upper bound on the given percentile, in nanoseconds
+	 */
+	public long getPercentileNanos(double fraction) {
+		long n = count.sum();
+		if (n == 0)
+			return 0;
+		long target = (long) Math.ceil(n * fraction);
+		long seen = 0;
+		for (int i = 0; i < buckets.length; i++) {
+			seen += buckets[i].sum();
+			if (seen >= target)
+				return Math.min((i == 63) ? Long.MAX_VALUE : (2L << i) - 1, getMaxNanos());
+		}
+		return getMaxNanos();
+	}
+
+	public void reset() {
+		for (LongAdder b : buckets)
+			b.reset();
+		count.reset();
+		totalNanos.reset();
+		maxNanos.reset();
+	}
+
+	public String toString() {
+		return "count="+getCount()+" mean="+ms((long) getMeanNanos())+"ms p50<="+ms(getPercentileNanos(0.5))+"ms p99<="+ms(getPercentileNanos(0.99))+"ms max="+ms(getMaxNanos())+"ms";
+	}
+
+	private static String ms(long nanos) {
+		return String.format("%.3f", nanos / 1e6);
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.challengeandresponse.configfilereader;
+
+/**
+ * Notified after a ConfigFileReader has switched to a freshly loaded section.
+ *
+ * @see ConfigFileReader#addReloadListener(ReloadListener)
+ * @author jim
+ */
+public interface ReloadListener {
+
+	/**
+	 * Called on the thread that ran the reload, after the new section has been published
+	 * @param cfr the reader that was reloaded
+	 * @param oldSection the section the reader had before
+	 * @param newSection the section it has now
+	 */
+	public void reloaded(ConfigFileReader cfr, SectionSnapshot oldSection, SectionSnapshot newSection);
+
+}
@@ -0,0 +1,646 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Loads a section with a small hand-written scanner for the config file dialect, instead of a general XML parser.
+ *
+ * <p>The file is read into a byte array and scanned once. Sections other than the one requested are skipped over
+ * by counting tags, and the requested section is compiled straight into a SectionSnapshot. Integers, longs and
+ * booleans are parsed from the bytes of each element's text, so the snapshot's pre-parsed values cost no extra
+ * Strings and no NumberFormatExceptions. Element and attribute names are looked up in a small table by their bytes,
+ * so a name repeated on every element is decoded once.</p>
+ *
+ * <p>The dialect is: UTF-8 (or ASCII) text, one root element, sections under it, and elements with attributes,
+ * text and CDATA under those, plus comments and processing instructions anywhere. The five predefined entities and
+ * character references are understood. DOCTYPEs, other entities, namespace prefixes and other encodings are not, and
+ * neither is malformed XML; all of these fail with an IOException giving the line and column (in bytes) of the problem.</p>
+ *
+ * <pre>
+ * ConfigFileReader cfr = new ConfigFileReader(f,"section1",new ScanningSectionLoader());
+ * </pre>
+ *
+ * @author jim
+ */
+public class ScanningSectionLoader
+implements SectionLoader {
+
+	private final boolean dedupValues;
+
+
+	public ScanningSectionLoader() {
+		this(Symbols.dedupValuesByDefault());
+	}
+
+	/**
+	 * @param dedupValues true to share one copy of each distinct element text and attribute value within a section
+	 */
+	public ScanningSectionLoader(boolean dedupValues) {
+		this.dedupValues = dedupValues;
+	}
+
+
+	public SectionSnapshot load(File configFile, String sectionName)
+	throws IOException, ElementNotFoundException {
+		byte[] b;
+		try {
+			b = Files.readAllBytes(configFile.toPath());
+		}
+		catch (IOException ioe) {
+			throw new IOException("ConfigFileReader:IO exception building configuration from file: "+configFile+" "+ioe);
+		}
+		long start = System.nanoTime();
+		SectionSnapshot se;
+		try {
+			se = new Scanner(b, new Symbols(dedupValues)).section(sectionName);
+		}
+		catch (ScanException se1) {
+			if (ConfigMetrics.enabled)
+				ConfigMetrics.getInstance().parseFailed();
+			int[] lc = se1.lineAndColumn(b);
+			throw new IOException("ConfigFileReader:Parse error in file: "+configFile+" at line "+lc[0]+", column "+lc[1]+": "+se1.getMessage());
+		}
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().parsed(configFile, System.nanoTime() - start);
+		if (se == null)
+			throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+		return se;
+	}
+
+
+	/**
+	 * A scan failure at a byte offset; turned into line and column only when reported
+	 */
+	private static final class ScanException
+	extends Exception {
+		private static final long serialVersionUID = 1L;
+		final int offset;
+
+		ScanException(String message, int offset) {
+			super(message);
+			this.offset = offset;
+		}
+
+		int[] lineAndColumn(byte[] b) {
+			int line = 1;
+			int lineStart = 0;
+			for (int i = 0; (i < offset) && (i < b.length); i++) {
+				if (b[i] == '\n') {
+					line++;
+					lineStart = i + 1;
+				}
+			}
+			return new int[] {line, offset - lineStart + 1};
+		}
+	}
+
+
+	private static final class Scanner {
+
+		private final byte[] b;
+		private final Symbols symbols;
+		private int p = 0;
+
+		// names seen so far, by a hash of their bytes
+		private final byte[][] nameBytes = new byte[256][];
+		private final String[] names = new String[256];
+
+		// the primitive values of the element most recently scanned by element()
+		private byte lastFlags;
+		private int lastInt;
+		private long lastLong;
+		private boolean lastBoolean;
+
+		Scanner(byte[] b, Symbols symbols) {
+			this.b = b;
+			this.symbols = symbols;
+		}
+
+
+		/**
+		 * @return the first child of the root element named sectionName, or null if there is none
+		 */
+		SectionSnapshot section(String sectionName)
+		throws ScanException {
+			if ((b.length >= 3) && ((b[0] & 0xff) == 0xef) && ((b[1] & 0xff) == 0xbb) && ((b[2] & 0xff) == 0xbf))
+				p = 3;
+			// prolog
+			while (true) {
+				skipWhitespace();
+				if (p >= b.length)
+					throw new ScanException("no root element", p);
+				if (startsWith("<?xml")) {
+					int end = indexOf("?>", p);
+					String decl = new String(b, p, end - p, StandardCharsets.ISO_8859_1);
+					int e = decl.indexOf("encoding");
+					if (e >= 0) {
+						String enc = decl.substring(e).replaceAll("^encoding\\s*=\\s*[\"']([^\"']*)[\"'].*$", "$1");
+						if (! (enc.equalsIgnoreCase("UTF-8") || enc.equalsIgnoreCase("US-ASCII") || enc.equalsIgnoreCase("ASCII")))
+							throw new ScanException("encoding "+enc+" is not supported", p);
+					}
+					p = end + 2;
+				}
+				else if (startsWith("<?"))
+					p = indexOf("?>", p) + 2;
+				else if (startsWith("<!--"))
+					p = indexOf("-->", p) + 3;
+				else if (startsWith("<!"))
+					throw new ScanException("DOCTYPE and DTDs are not supported", p);
+				else if (b[p] == '<')
+					break;
+				else
+					throw new ScanException("content is not allowed before the root element", p);
+			}
+
+			// root start tag
+			p++;
+			String rootName = name();
+			while (true) {
+				skipWhitespace();
+				if (p >= b.length)
+					throw new ScanException("unexpected end of file in tag <"+rootName+">", p);
+				if (b[p] == '>') {
+					p++;
+					break;
+				}
+				if (startsWith("/>"))
+					return null;
+				attributeName();
+				attributeValue();
+			}
+
+			// sections
+			while (true) {
+				int lt = nextTag();
+				if (lt < 0)
+					throw new ScanException("unexpected end of file: <"+rootName+"> is not closed", b.length);
+				p = lt;
+				if (startsWith("</")) {
+					endTag(rootName);
+					return null;
+				}
+				if (skipMarkup())
+					continue;
+				int tagStart = p;
+				p++;
+				String name = name();
+				p = tagStart;
+				if (name.equals(sectionName))
+					return element();
+				skipElement();
+			}
+		}
+
+
+		/**
+		 * Scan the element starting at p, and everything in it
+		 * @return the element's snapshot, with its own text parsed into lastFlags, lastInt, lastLong and lastBoolean
+		 */
+		private SectionSnapshot element()
+		throws ScanException {
+			int tagStart = p;
+			p++;
+			String name = name();
+			ArrayList <String> attributeNames = null;
+			ArrayList <String> attributeValues = null;
+			boolean empty = false;
+			while (true) {
+				skipWhitespace();
+				if (p >= b.length)
+					throw new ScanException("unexpected end of file in tag <"+name+">", tagStart);
+				if (b[p] == '>') {
+					p++;
+					break;
+				}
+				if (startsWith("/>")) {
+					p += 2;
+					empty = true;
+					break;
+				}
+				if (attributeNames == null) {
+					attributeNames = new ArrayList <String> (4);
+					attributeValues = new ArrayList <String> (4);
+				}
+				String an = attributeName();
+				if (attributeNames.contains(an))
+					throw new ScanException("attribute '"+an+"' appears twice in <"+name+">", p);
+				attributeNames.add(an);
+				attributeValues.add(symbols.value(attributeValue()));
+			}
+			String[] an = SectionSnapshot.NO_STRINGS;
+			String[] av = SectionSnapshot.NO_STRINGS;
+			if (attributeNames != null) {
+				an = symbols.attributeNames(attributeNames.toArray(new String[attributeNames.size()]));
+				av = attributeValues.toArray(new String[attributeValues.size()]);
+			}
+			if (empty) {
+				setParsed(p, p);
+				return new SectionSnapshot(name, "", an, av, SectionSnapshot.NO_CHILDREN);
+			}
+
+			// content: the text is either one plain run of bytes (parsed straight from the buffer), or built up
+			int runStart = -1;
+			int runEnd = -1;
+			StringBuilder text = null;
+			ArrayList <SectionSnapshot> children = null;
+			int[] ints = null;
+			long[] longs = null;
+			boolean[] booleans = null;
+			byte[] flags = null;
+			while (true) {
+				int lt = nextTag();
+				if (lt < 0)
+					throw new ScanException("unexpected end of file: <"+name+"> is not closed", b.length);
+				if (lt > p) {
+					if ((runStart < 0) && (text == null) && (! needsDecoding(p, lt, false))) {
+						runStart = p;
+						runEnd = lt;
+					}
+					else {
+						if (text == null) {
+							text = new StringBuilder();
+							if (runStart >= 0)
+								decode(text, runStart, runEnd, false);
+						}
+						decode(text, p, lt, false);
+					}
+				}
+				p = lt;
+				if (startsWith("</")) {
+					endTag(name);
+					break;
+				}
+				if (startsWith("<![CDATA[")) {
+					int end = indexOf("]]>", p);
+					if (text == null) {
+						text = new StringBuilder();
+						if (runStart >= 0)
+							decode(text, runStart, runEnd, false);
+					}
+					text.append(new String(b, p + 9, end - p - 9, StandardCharsets.UTF_8));
+					p = end + 3;
+					continue;
+				}
+				if (skipMarkup())
+					continue;
+				if (children == null) {
+					children = new ArrayList <SectionSnapshot> ();
+					ints = new int[8];
+					longs = new long[8];
+					booleans = new boolean[8];
+					flags = new byte[8];
+				}
+				SectionSnapshot child = element();
+				int i = children.size();
+				if (i == flags.length) {
+					ints = Arrays.copyOf(ints, i * 2);
+					longs = Arrays.copyOf(longs, i * 2);
+					booleans = Arrays.copyOf(booleans, i * 2);
+					flags = Arrays.copyOf(flags, i * 2);
+				}
+				children.add(child);
+				ints[i] = lastInt;
+				longs[i] = lastLong;
+				booleans[i] = lastBoolean;
+				flags[i] = lastFlags;
+			}
+
+			String s;
+			if (text != null) {
+				s = text.toString();
+				setParsed(s);
+			}
+			else if (runStart >= 0) {
+				s = new String(b, runStart, runEnd - runStart, StandardCharsets.UTF_8);
+				setParsed(runStart, runEnd);
+			}
+			else {
+				s = "";
+				setParsed(p, p);
+			}
+			s = symbols.value(s);
+
+			if (children == null)
+				return new SectionSnapshot(name, s, an, av, SectionSnapshot.NO_CHILDREN);
+			int n = children.size();
+			return new SectionSnapshot(name, s, an, av, children.toArray(new SectionSnapshot[n]),
+					Arrays.copyOf(ints, n), Arrays.copyOf(longs, n), Arrays.copyOf(booleans, n), Arrays.copyOf(flags, n));
+		}
+
+		/**
+		 * Parse b[start,end) as an int, a long and a boolean, into the last___ fields, without making a String
+		 */
+		private void setParsed(int start, int end) {
+			lastFlags = 0;
+			lastInt = 0;
+			lastLong = 0;
+			lastBoolean = (end - start == 4)
+					&& ((b[start] | 0x20) == 't') && ((b[start+1] | 0x20) == 'r') && ((b[start+2] | 0x20) == 'u') && ((b[start+3] | 0x20) == 'e');
+			int i = start;
+			if (i >= end)
+				return;
+			boolean negative = (b[i] == '-');
+			if (negative || (b[i] == '+'))
+				i++;
+			if (i >= end)
+				return;
+			// accumulate negatively, as Long.parseLong does, so that Long.MIN_VALUE fits
+			long acc = 0;
+			for (; i < end; i++) {
+				int d = b[i] - '0';
+				if ((d < 0) || (d > 9)) {
+					// non-ASCII may be a digit in another script, which parseInt accepts
+					if (b[i] < 0)
+						setParsed(new String(b, start, end - start, StandardCharsets.UTF_8));
+					return;
+				}
+				if (acc < (Long.MIN_VALUE / 10))
+					return;
+				acc *= 10;
+				if (acc < Long.MIN_VALUE + d)
+					return;
+				acc -= d;
+			}
+			if (! negative) {
+				if (acc == Long.MIN_VALUE)
+					return;
+				acc = -acc;
+			}
+			lastLong = acc;
+			lastFlags = SectionSnapshot.LONG_OK;
+			if ((acc >= Integer.MIN_VALUE) && (acc <= Integer.MAX_VALUE)) {
+				lastInt = (int) acc;
+				lastFlags |= SectionSnapshot.INT_OK;
+			}
+		}
+
+
+		/**
+		 * Parse text that had to be decoded into a String, the same way as the snapshot would
+		 */
+		private void setParsed(String s) {
+			int[] ints = new int[1];
+			long[] longs = new long[1];
+			boolean[] booleans = new boolean[1];
+			byte[] flags = new byte[1];
+			SectionSnapshot.preparse(s, 0, ints, longs, booleans, flags);
+			lastInt = ints[0];
+			lastLong = longs[0];
+			lastBoolean = booleans[0];
+			lastFlags = flags[0];
+		}
+
+
+		/**
+		 * Skip the element starting at p, without building anything
+		 */
+		private void skipElement()
+		throws ScanException {
+			int depth = 0;
+			while (true) {
+				if (startsWith("</")) {
+					p = skipTag(p);
+					if (--depth == 0)
+						return;
+				}
+				else if (! skipMarkup()) {
+					int end = skipTag(p);
+					if (b[end - 2] != '/')
+						depth++;
+					else if (depth == 0) {
+						p = end;
+						return;
+					}
+					p = end;
+				}
+				int lt = nextTag();
+				if (lt < 0)
+					throw new ScanException("unexpected end of file in an element that is not closed", b.length);
+				p = lt;
+			}
+		}
+
+		/**
+		 * If p is at a comment, processing instruction or CDATA section, skip past it
+		 * @return true if something was skipped
+		 */
+		private boolean skipMarkup()
+		throws ScanException {
+			if (startsWith("<!--"))
+				p = indexOf("-->", p) + 3;
+			else if (startsWith("<![CDATA["))
+				p = indexOf("]]>", p) + 3;
+			else if (startsWith("<?"))
+				p = indexOf("?>", p) + 2;
+			else if (startsWith("<!"))
+				throw new ScanException("DOCTYPE and DTDs are not supported", p);
+			else
+				return false;
+			return true;
+		}
+
+		private int skipTag(int i)
+		throws ScanException {
+			byte quote = 0;
+			for (int j = i + 1; j < b.length; j++) {
+				byte c = b[j];
+				if (quote != 0) {
+					if (c == quote)
+						quote = 0;
+				}
+				else if ((c == '"') || (c == '\''))
+					quote = c;
+				else if (c == '>')
+					return j + 1;
+			}
+			throw new ScanException("unexpected end of file in a tag", i);
+		}
+
+		private void endTag(String expected)
+		throws ScanException {
+			int start = p;
+			p += 2;
+			String name = name();
+			if (! name.equals(expected))
+				throw new ScanException("expected </"+expected+"> but found </"+name+">", start);
+			skipWhitespace();
+			if ((p >= b.length) || (b[p] != '>'))
+				throw new ScanException("expected '>' to end </"+name+">", p);
+			p++;
+		}
+
+
+		/**
+		 * @return the name starting at p, moving p past it
+		 */
+		private String name()
+		throws ScanException {
+			int start = p;
+			int h = 0;
+			while ((p < b.length) && isNameByte(b[p])) {
+				h = 31 * h + b[p];
+				p++;
+			}
+			int len = p - start;
+			if (len == 0)
+				throw new ScanException("expected a name", start);
+			int slot = (h ^ (h >>> 8)) & 0xff;
+			byte[] nb = nameBytes[slot];
+			if ((nb != null) && (nb.length == len) && Arrays.equals(nb, 0, len, b, start, p))
+				return names[slot];
+			String name = new String(b, start, len, StandardCharsets.UTF_8);
+			if (name.indexOf(':') >= 0)
+				throw new ScanException("namespace prefixes are not supported: "+name, start);
+			name = Symbols.name(name);
+			nameBytes[slot] = Arrays.copyOfRange(b, start, p);
+			names[slot] = name;
+			return name;
+		}
+
+		private static boolean isNameByte(byte c) {
+			return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9'))
+					|| (c == '_') || (c == '-') || (c == '.') || (c == ':') || (c < 0);
+		}
+
+		private String attributeName()
+		throws ScanException {
+			String an = name();
+			if (an.startsWith("xmlns"))
+				throw new ScanException("namespace declarations are not supported", p - an.length());
+			skipWhitespace();
+			if ((p >= b.length) || (b[p] != '='))
+				throw new ScanException("expected '=' after attribute name '"+an+"'", p);
+			p++;
+			skipWhitespace();
+			return an;
+		}
+
+		private String attributeValue()
+		throws ScanException {
+			if ((p >= b.length) || ((b[p] != '"') && (b[p] != '\'')))
+				throw new ScanException("expected a quoted attribute value", p);
+			byte quote = b[p];
+			int start = p + 1;
+			int end = start;
+			while ((end < b.length) && (b[end] != quote)) {
+				if (b[end] == '<')
+					throw new ScanException("'<' is not allowed in an attribute value", end);
+				end++;
+			}
+			if (end >= b.length)
+				throw new ScanException("unexpected end of file in an attribute value", p);
+			p = end + 1;
+			if (! needsDecoding(start, end, true))
+				return new String(b, start, end - start, StandardCharsets.UTF_8);
+			StringBuilder sb = new StringBuilder(end - start);
+			decode(sb, start, end, true);
+			return sb.toString();
+		}
+
+		private boolean needsDecoding(int start, int end, boolean attribute) {
+			for (int i = start; i < end; i++) {
+				byte c = b[i];
+				if ((c == '&') || (c == '\r') || (attribute && ((c == '\t') || (c == '\n'))))
+					return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Append b[start,end) to sb, expanding entity and character references and normalizing line ends,
+		 * and for attribute values, whitespace, as an XML parser would
+		 */
+		private void decode(StringBuilder sb, int start, int end, boolean attribute)
+		throws ScanException {
+			int run = start;
+			for (int i = start; i < end; i++) {
+				byte c = b[i];
+				if ((c != '&') && (c != '\r') && (! (attribute && ((c == '\t') || (c == '\n')))))
+					continue;
+				sb.append(new String(b, run, i - run, StandardCharsets.UTF_8));
+				if (c == '&') {
+					int semi = i + 1;
+					while ((semi < end) && (b[semi] != ';'))
+						semi++;
+					if (semi >= end)
+						throw new ScanException("unterminated entity reference", i);
+					String ref = new String(b, i + 1, semi - i - 1, StandardCharsets.ISO_8859_1);
+					if (ref.equals("lt"))
+						sb.append('<');
+					else if (ref.equals("gt"))
+						sb.append('>');
+					else if (ref.equals("amp"))
+						sb.append('&');
+					else if (ref.equals("quot"))
+						sb.append('"');
+					else if (ref.equals("apos"))
+						sb.append('\'');
+					else if (ref.startsWith("#")) {
+						try {
+							sb.appendCodePoint(ref.startsWith("#x") ? Integer.parseInt(ref.substring(2), 16) : Integer.parseInt(ref.substring(1)));
+						}
+						catch (IllegalArgumentException iae) {
+							throw new ScanException("bad character reference &"+ref+";", i);
+						}
+					}
+					else
+						throw new ScanException("entity &"+ref+"; is not supported", i);
+					i = semi;
+				}
+				else if (c == '\r') {
+					sb.append(attribute ? ' ' : '\n');
+					if ((i + 1 < end) && (b[i+1] == '\n'))
+						i++;
+				}
+				else
+					sb.append(' ');
+				run = i + 1;
+			}
+			sb.append(new String(b, run, end - run, StandardCharsets.UTF_8));
+		}
+
+
+		private void skipWhitespace() {
+			while ((p < b.length) && ((b[p] == ' ') || (b[p] == '\t') || (b[p] == '\r') || (b[p] == '\n')))
+				p++;
+		}
+
+		/**
+		 * @return the offset of the next '&lt;' at or after p, or -1
+		 */
+		private int nextTag() {
+			for (int i = p; i < b.length; i++)
+				if (b[i] == '<')
+					return i;
+			return -1;
+		}
+
+		private boolean startsWith(String s) {
+			if (p + s.length() > b.length)
+				return false;
+			for (int i = 0; i < s.length(); i++)
+				if (b[p + i] != s.charAt(i))
+					return false;
+			return true;
+		}
+
+		private int indexOf(String s, int from)
+		throws ScanException {
+			int n = b.length - s.length();
+			outer:
+			for (int i = from; i <= n; i++) {
+				for (int j = 0; j < s.length(); j++)
+					if (b[i + j] != s.charAt(j))
+						continue outer;
+				return i;
+			}
+			throw new ScanException("unexpected end of file: '"+s+"' not found", from);
+		}
+
+	}
+
+}
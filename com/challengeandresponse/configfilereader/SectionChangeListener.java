@@ -0,0 +1,19 @@
+package com.challengeandresponse.configfilereader;
+
+/**
+ * Notified when a reload changes a section, or changes particular elements of it.
+ *
+ * @see ConfigFileReader#addChangeListener(SectionChangeListener)
+ * @see ConfigFileReader#addChangeListener(String, SectionChangeListener)
+ * @author jim
+ */
+public interface SectionChangeListener {
+
+	/**
+	 * Called on the thread that ran the reload, after the new section has been published
+	 * @param cfr the reader that was reloaded
+	 * @param diff what changed. It is never empty
+	 */
+	public void sectionChanged(ConfigFileReader cfr, SectionDiff diff);
+
+}
@@ -0,0 +1,172 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.*;
+
+/**
+ * What changed in a section between two versions of a config file, by element name.
+ *
+ * <p>Elements are compared by content hash (see SectionSnapshot.contentHash()), so a section or element whose
+ * content is unchanged is skipped without looking inside it. An element name is "changed" when it is in both
+ * versions but its elements differ. For repeated elements, such as those read by getList(), getMap() and
+ * getMaps(), the entries that were added and removed are listed too, matched by content regardless of their order;
+ * an entry that was edited shows up as one removed entry and one added entry.</p>
+ *
+ * @see SectionChangeListener
+ * @author jim
+ */
+public final class SectionDiff {
+
+	private final SectionSnapshot oldSection;
+	private final SectionSnapshot newSection;
+	private final Set <String> added;
+	private final Set <String> removed;
+	private final Set <String> changed;
+	private final Map <String,List<SectionSnapshot>> addedEntries;
+	private final Map <String,List<SectionSnapshot>> removedEntries;
+
+
+	private SectionDiff(SectionSnapshot oldSection, SectionSnapshot newSection, Set<String> added, Set<String> removed, Set<String> changed,
+			Map<String,List<SectionSnapshot>> addedEntries, Map<String,List<SectionSnapshot>> removedEntries) {
+		this.oldSection = oldSection;
+		this.newSection = newSection;
+		this.added = Collections.unmodifiableSet(added);
+		this.removed = Collections.unmodifiableSet(removed);
+		this.changed = Collections.unmodifiableSet(changed);
+		this.addedEntries = addedEntries;
+		this.removedEntries = removedEntries;
+	}
+
+	/**
+	 * Compare two versions of a section
+	 */
+	public static SectionDiff compare(SectionSnapshot oldSection, SectionSnapshot newSection) {
+		TreeSet <String> added = new TreeSet <String> ();
+		TreeSet <String> removed = new TreeSet <String> ();
+		TreeSet <String> changed = new TreeSet <String> ();
+		HashMap <String,List<SectionSnapshot>> addedEntries = new HashMap <String,List<SectionSnapshot>> ();
+		HashMap <String,List<SectionSnapshot>> removedEntries = new HashMap <String,List<SectionSnapshot>> ();
+		if (oldSection.contentHash() != newSection.contentHash()) {
+			for (String name : newSection.elementNames()) {
+				if (oldSection.countOf(name) == 0)
+					added.add(name);
+				else if (! sameElements(oldSection, newSection, name))
+					changed.add(name);
+				else
+					continue;
+				entries(newSection, oldSection, name, addedEntries);
+				entries(oldSection, newSection, name, removedEntries);
+			}
+			for (String name : oldSection.elementNames()) {
+				if (newSection.countOf(name) == 0) {
+					removed.add(name);
+					entries(oldSection, newSection, name, removedEntries);
+				}
+			}
+		}
+		return new SectionDiff(oldSection, newSection, added, removed, changed, addedEntries, removedEntries);
+	}
+
+	/**
+	 * @return true if both sections have the same elements named name, with the same content, in the same order
+	 */
+	private static boolean sameElements(SectionSnapshot a, SectionSnapshot b, String name) {
+		int n = a.countOf(name);
+		if (b.countOf(name) != n)
+			return false;
+		for (int i = 0; i < n; i++)
+			if (a.childAt(a.slotOf(name,i)).contentHash() != b.childAt(b.slotOf(name,i)).contentHash())
+				return false;
+		return true;
+	}
+
+	/**
+	 * Record the elements named name that are in "in" but not in "notIn", counting duplicates
+	 */
+	private static void entries(SectionSnapshot in, SectionSnapshot notIn, String name, Map<String,List<SectionSnapshot>> result) {
+		HashMap <Long,int[]> others = new HashMap <Long,int[]> ();
+		for (int i = 0; i < notIn.countOf(name); i++) {
+			Long h = Long.valueOf(notIn.childAt(notIn.slotOf(name,i)).contentHash());
+			int[] count = others.get(h);
+			if (count == null)
+				others.put(h, new int[] {1});
+			else
+				count[0]++;
+		}
+		ArrayList <SectionSnapshot> l = new ArrayList <SectionSnapshot> ();
+		for (int i = 0; i < in.countOf(name); i++) {
+			SectionSnapshot e = in.childAt(in.slotOf(name,i));
+			int[] count = others.get(Long.valueOf(e.contentHash()));
+			if ((count != null) && (count[0] > 0))
+				count[0]--;
+			else
+				l.add(e);
+		}
+		if (! l.isEmpty())
+			result.put(name, Collections.unmodifiableList(l));
+	}
+
+
+	/**
+	 * @return true if nothing in the section changed
+	 */
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+	}
+
+	/**
+	 * @return true if the elements named elementName were added, removed or changed
+	 */
+	public boolean affects(String elementName) {
+		return added.contains(elementName) || removed.contains(elementName) || changed.contains(elementName);
+	}
+
+	/**
+	 * @return the names of elements that are in the new section but not the old one
+	 */
+	public Set<String> getAdded() {
+		return added;
+	}
+
+	/**
+	 * @return the names of elements that were in the old section but are not in the new one
+	 */
+	public Set<String> getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * @return the names of elements that are in both sections, with different content
+	 */
+	public Set<String> getChanged() {
+		return changed;
+	}
+
+	/**
+	 * @return the elements named elementName that are in the new section and were not in the old one. Empty if none
+	 */
+	public List<SectionSnapshot> getAddedEntries(String elementName) {
+		List <SectionSnapshot> l = addedEntries.get(elementName);
+		return (l == null) ? Collections.<SectionSnapshot>emptyList() : l;
+	}
+
+	/**
+	 * @return the elements named elementName that were in the old section and are not in the new one. Empty if none
+	 */
+	public List<SectionSnapshot> getRemovedEntries(String elementName) {
+		List <SectionSnapshot> l = removedEntries.get(elementName);
+		return (l == null) ? Collections.<SectionSnapshot>emptyList() : l;
+	}
+
+	public SectionSnapshot getOldSection() {
+		return oldSection;
+	}
+
+	public SectionSnapshot getNewSection() {
+		return newSection;
+	}
+
+	public String toString() {
+		return "SectionDiff: "+newSection+" added:"+added+" removed:"+removed+" changed:"+changed;
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loads one section of a config file - one child element of the root "config" element - and
+ * compiles it into a SectionSnapshot. A ConfigFileReader is built on whichever loader it is given;
+ * the default is the DOMSectionLoader.
+ *
+ * @author jim
+ */
+public interface SectionLoader {
+
+	/**
+	 * @param configFile a File pointing to the configuration file to process
+	 * @param sectionName the name of the node that contains all the config data
+	 * @return the compiled section
+	 * @throws IOException if the file cannot be read or is not well-formed XML
+	 * @throws ElementNotFoundException if the file has no section named sectionName
+	 */
+	public SectionSnapshot load(File configFile, String sectionName)
+	throws IOException, ElementNotFoundException;
+
+}
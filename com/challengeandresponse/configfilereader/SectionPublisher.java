@@ -0,0 +1,245 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Publishes the elements of one name directly inside a section, straight from the file, in chunks, at the pace
+ * its subscribers ask for them.
+ *
+ * <p>Each subscriber gets its own pass over the file with StAX. A chunk is only parsed when the subscriber has
+ * asked for one, so however large the section is, no more than (chunks requested but not yet delivered) x chunkSize
+ * elements are ever in memory on the publishing side. Each item is an unmodifiable list of up to chunkSize elements,
+ * in document order; only the last chunk may be short.</p>
+ *
+ * <p>The elements are immutable SectionSnapshots, with anything nested in them, so chunks can be handed to other
+ * threads. To work on several chunks at once, request as many as there are workers and request one more each time
+ * a worker finishes:</p>
+ * <pre>
+ * cfr.publish("client", 1000).subscribe(new Flow.Subscriber&lt;List&lt;SectionSnapshot&gt;&gt;() {
+ * 	Flow.Subscription s;
+ * 	public void onSubscribe(Flow.Subscription s) { this.s = s; s.request(WORKERS); }
+ * 	public void onNext(List&lt;SectionSnapshot&gt; chunk) {
+ * 		workers.execute(() -&gt; { load(chunk); s.request(1); });
+ * 	}
+ * 	...
+ * });
+ * </pre>
+ * <p>Parsing and signalling run on the executor given (by default ConfigLoader.getDefaultExecutor()), one task per
+ * subscriber at a time, so signals to a subscriber never overlap. A missing section, or a file that can't be read or
+ * parsed, is reported to onError(). A subscriber that throws from one of its methods is treated as having cancelled,
+ * and its file is closed.</p>
+ *
+ * @author jim
+ */
+public class SectionPublisher
+implements Flow.Publisher<List<SectionSnapshot>> {
+
+	private final File configFile;
+	private final String sectionName;
+	private final String elementName;
+	private final int chunkSize;
+	private final Executor executor;
+
+
+	public SectionPublisher(File configFile, String sectionName, String elementName, int chunkSize) {
+		this(configFile, sectionName, elementName, chunkSize, ConfigLoader.getDefaultExecutor());
+	}
+
+	/**
+	 * @param chunkSize the most elements in one item
+	 * @param executor runs the parsing and calls the subscribers
+	 */
+	public SectionPublisher(File configFile, String sectionName, String elementName, int chunkSize, Executor executor) {
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("SectionPublisher: chunkSize must be at least 1, not "+chunkSize);
+		this.configFile = configFile;
+		this.sectionName = sectionName;
+		this.elementName = elementName;
+		this.chunkSize = chunkSize;
+		this.executor = executor;
+	}
+
+
+	public void subscribe(Flow.Subscriber<? super List<SectionSnapshot>> subscriber) {
+		ChunkSubscription s = new ChunkSubscription(subscriber);
+		subscriber.onSubscribe(s);
+	}
+
+
+	/**
+	 * One subscriber's pass over the file. Requests and cancels only record what is wanted and schedule run(),
+	 * which does the parsing and signalling; the work-in-progress count makes sure only one run() is active at a time.
+	 */
+	private final class ChunkSubscription
+	implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super List<SectionSnapshot>> subscriber;
+		private final AtomicLong demand = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private volatile boolean cancelled = false;
+		private volatile boolean badRequest = false;
+		private volatile long badRequestN;
+
+		// used only within run()
+		private InputStream in = null;
+		private XMLStreamReader xsr = null;
+		private Symbols symbols = null;
+		private boolean done = false;
+		private boolean positioned = false;	// the reader is on the start of a wanted element not yet read
+		private boolean ended = false;	// the section has no more wanted elements
+
+
+		ChunkSubscription(Flow.Subscriber<? super List<SectionSnapshot>> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if (n <= 0) {
+				badRequestN = n;
+				badRequest = true;
+			}
+			else {
+				long d;
+				do {
+					d = demand.get();
+				} while (! demand.compareAndSet(d, (d + n < 0) ? Long.MAX_VALUE : d + n));
+			}
+			schedule();
+		}
+
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		private void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				try {
+					executor.execute(this);
+				}
+				catch (RejectedExecutionException ree) {
+					// no run() is active, since we took wip from 0, so the stream is ours to close
+					cancelled = true;
+					finish();
+					wip.set(0);
+					subscriber.onError(ree);
+				}
+			}
+		}
+
+		public void run() {
+			int missed = 1;
+			while (true) {
+				try {
+					drain();
+				}
+				catch (Throwable t) {
+					// drain() catches everything from the parsing, so this came from the subscriber's onNext(),
+					// onComplete() or onError(): by rule 2.13 the subscription is cancelled
+					cancelled = true;
+					finish();
+				}
+				missed = wip.addAndGet(-missed);
+				if (missed == 0)
+					return;
+			}
+		}
+
+		private void drain() {
+			if (done)
+				return;
+			if (cancelled) {
+				finish();
+				return;
+			}
+			if (badRequest) {
+				finish();
+				subscriber.onError(new IllegalArgumentException("SectionPublisher: request() needs a positive number, not "+badRequestN));
+				return;
+			}
+			while ((demand.get() > 0) && (! cancelled)) {
+				List <SectionSnapshot> chunk;
+				try {
+					if (xsr == null)
+						open();
+					chunk = readChunk();
+				}
+				catch (Throwable t) {
+					finish();
+					subscriber.onError(failure(t));
+					return;
+				}
+				if (! chunk.isEmpty()) {
+					demand.decrementAndGet();
+					subscriber.onNext(chunk);
+				}
+				if (ended) {
+					// complete with the last chunk, without waiting for a request that may never come
+					finish();
+					if (! cancelled)
+						subscriber.onComplete();
+					return;
+				}
+			}
+			if (cancelled)
+				finish();
+		}
+
+		/**
+		 * @return what to report to onError() for an exception from opening or parsing the file
+		 */
+		private Throwable failure(Throwable t) {
+			if (t instanceof XMLStreamException) {
+				if (ConfigMetrics.enabled)
+					ConfigMetrics.getInstance().parseFailed();
+				return new IOException("ConfigFileReader:XML exception building configuration from file: "+configFile+" "+t.getMessage());
+			}
+			if ((t instanceof IOException) || (t instanceof ElementNotFoundException) || (t instanceof Error))
+				return t;
+			return new IOException("ConfigFileReader:Exception building configuration from file: "+configFile+" "+t, t);
+		}
+
+		private void open()
+		throws IOException, ElementNotFoundException, XMLStreamException {
+			in = new BufferedInputStream(new FileInputStream(configFile), 65536);
+			xsr = StreamingSectionLoader.createReader(in);
+			if (! StreamingSectionLoader.seekSection(xsr, sectionName))
+				throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+			// names are shared process-wide anyway; values aren't deduplicated, since that table would grow with the section
+			symbols = new Symbols(false);
+		}
+
+		private List<SectionSnapshot> readChunk()
+		throws XMLStreamException {
+			ArrayList <SectionSnapshot> chunk = new ArrayList <SectionSnapshot> (chunkSize);
+			while (chunk.size() < chunkSize) {
+				if ((! positioned) && (! StreamingSectionLoader.seekChild(xsr, elementName))) {
+					ended = true;
+					break;
+				}
+				positioned = false;
+				chunk.add(StreamingSectionLoader.readElement(xsr, symbols));
+			}
+			// look ahead to the next element, so that the chunk that ends the section is known to be the last
+			if (! ended) {
+				positioned = StreamingSectionLoader.seekChild(xsr, elementName);
+				ended = ! positioned;
+			}
+			return Collections.unmodifiableList(chunk);
+		}
+
+		private void finish() {
+			done = true;
+			if (in != null)
+				StreamingSectionLoader.close(xsr, in);
+			in = null;
+			xsr = null;
+		}
+	}
+
+}
@@ -0,0 +1,546 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jdom.*;
+
+/**
+ * An immutable, compiled copy of one element of a config file and everything beneath it.
+ *
+ * <p>The snapshot is built once (normally when a ConfigFileReader is constructed) and then
+ * answers lookups without going back to the DOM. Each child element occupies a "slot". A hash index maps
+ * element names to their slots, and the text of every child is parsed up front into int, long and boolean
+ * arrays, so a typed read is a hash lookup plus an array load - no child scan, no reparsing, no allocation.</p>
+ *
+ * <p>The first slot for a name is the same element that Element.getChildText(name) would have found.
+ * Repeated elements (as used by getList, getMap and getMaps) keep all of their slots, in document order.</p>
+ *
+ * <p>Snapshots are never modified after they are built and may be shared freely between threads.</p>
+ *
+ * @author jim
+ */
+public final class SectionSnapshot
+implements ConfigEntry {
+
+	static final byte INT_OK = 1;
+	static final byte LONG_OK = 2;
+
+	static final String[] NO_STRINGS = new String[0];
+	static final SectionSnapshot[] NO_CHILDREN = new SectionSnapshot[0];
+	private static final int[] NO_INTS = new int[0];
+	private static final long[] NO_LONGS = new long[0];
+	private static final boolean[] NO_BOOLEANS = new boolean[0];
+	private static final byte[] NO_FLAGS = new byte[0];
+	private static final Map <String,int[]> NO_SLOTS = Collections.emptyMap();
+
+	private final String name;
+	private final String text;
+	private final String[] attributeNames;
+	private final String[] attributeValues;
+
+	private final SectionSnapshot[] children;
+	private final Map <String,int[]> slots;
+	private final int[] intValues;
+	private final long[] longValues;
+	private final boolean[] booleanValues;
+	private final byte[] flags;
+	private final long weight;
+	private final long hash;
+	private SectionView view = null;	// made on first use. Views are immutable, so a race just makes a spare one
+	private SectionSnapshot attributes = null;	// likewise
+
+	// secondary indexes, built on first use: element name -> attribute name (or TEXT_INDEX, or CHILD_INDEX+child name) -> value -> slots
+	private static final String TEXT_INDEX = "\u0000text";
+	private static final String CHILD_INDEX = "\u0000child:";
+	private volatile ConcurrentHashMap <String,ConcurrentHashMap<String,Map<String,int[]>>> indexes = null;
+
+
+	SectionSnapshot(String name, String text, String[] attributeNames, String[] attributeValues, SectionSnapshot[] children) {
+		this(name, text, attributeNames, attributeValues, children, null, null, null, null);
+	}
+
+	/**
+	 * For loaders that have already parsed the children's text into numbers, e.g. straight from the file's bytes.
+	 * The arrays are kept, not copied, and must be one entry per child; or all null to have the text parsed here.
+	 * @param parsedFlags INT_OK and LONG_OK per child, as set by preparse()
+	 */
+	SectionSnapshot(String name, String text, String[] attributeNames, String[] attributeValues, SectionSnapshot[] children,
+			int[] parsedInts, long[] parsedLongs, boolean[] parsedBooleans, byte[] parsedFlags) {
+		this.name = name;
+		this.text = text;
+		this.attributeNames = attributeNames;
+		this.attributeValues = attributeValues;
+		this.children = children;
+		this.weight = estimateWeight(name, text, attributeNames, attributeValues, children);
+		this.hash = contentHash(name, text, attributeNames, attributeValues, children);
+
+		int n = children.length;
+		if (n == 0) {
+			this.slots = NO_SLOTS;
+			this.intValues = NO_INTS;
+			this.longValues = NO_LONGS;
+			this.booleanValues = NO_BOOLEANS;
+			this.flags = NO_FLAGS;
+			return;
+		}
+
+		if (parsedFlags == null) {
+			// pre-parse the text of every child into each of the primitive types
+			parsedInts = new int[n];
+			parsedLongs = new long[n];
+			parsedBooleans = new boolean[n];
+			parsedFlags = new byte[n];
+			for (int i = 0; i < n; i++)
+				preparse(children[i].text, i, parsedInts, parsedLongs, parsedBooleans, parsedFlags);
+		}
+		this.intValues = parsedInts;
+		this.longValues = parsedLongs;
+		this.booleanValues = parsedBooleans;
+		this.flags = parsedFlags;
+
+		// index the slots by element name. Count first so repeated elements don't cause repeated copying
+		HashMap <String,int[]> counts = new HashMap <String,int[]> ();
+		for (SectionSnapshot c : children) {
+			int[] count = counts.get(c.name);
+			if (count == null)
+				counts.put(c.name, new int[] {1});
+			else
+				count[0]++;
+		}
+		HashMap <String,int[]> index = new HashMap <String,int[]> (counts.size() * 2);
+		for (int i = 0; i < n; i++) {
+			int[] s = index.get(children[i].name);
+			if (s == null) {
+				s = new int[counts.get(children[i].name)[0]];
+				index.put(children[i].name, s);
+			}
+			int[] count = counts.get(children[i].name);
+			s[s.length - count[0]--] = i;
+		}
+		this.slots = index;
+	}
+
+
+	/**
+	 * Parse s as Integer.parseInt(), Long.parseLong() and Boolean.parseBoolean() would, into slot i of the arrays.
+	 * Text that isn't an optional sign and digits is passed over without trying, so most strings cost no exceptions.
+	 */
+	static void preparse(String s, int i, int[] ints, long[] longs, boolean[] booleans, byte[] flags) {
+		booleans[i] = Boolean.parseBoolean(s);
+		int digits = digits(s);
+		if (digits == 0)
+			return;
+		if (digits <= 9) {
+			// can't overflow either type
+			ints[i] = Integer.parseInt(s);
+			longs[i] = ints[i];
+			flags[i] |= INT_OK | LONG_OK;
+			return;
+		}
+		try {
+			ints[i] = Integer.parseInt(s);
+			flags[i] |= INT_OK;
+		}
+		catch (NumberFormatException nfe) {
+		}
+		try {
+			longs[i] = Long.parseLong(s);
+			flags[i] |= LONG_OK;
+		}
+		catch (NumberFormatException nfe) {
+		}
+	}
+
+	/**
+	 * @return the number of digits in s if it is an optional sign followed only by digits, else 0
+	 */
+	private static int digits(String s) {
+		int n = s.length();
+		int start = ((n > 0) && ((s.charAt(0) == '-') || (s.charAt(0) == '+'))) ? 1 : 0;
+		for (int k = start; k < n; k++)
+			if (! Character.isDigit(s.charAt(k)))
+				return 0;
+		return n - start;
+	}
+
+	/**
+	 * A rough count of the bytes held by a snapshot: the object and its arrays, its own strings, and its children.
+	 * Names are assumed to be shared (see Symbols) and are not counted. Values shared with other snapshots are
+	 * counted each time they are seen.
+	 */
+	private static long estimateWeight(String name, String text, String[] attributeNames, String[] attributeValues, SectionSnapshot[] children) {
+		long w = 64 + stringWeight(text);
+		if (attributeValues.length > 0)
+			w += 16 + attributeValues.length * 4;
+		for (int i = 0; i < attributeValues.length; i++)
+			w += stringWeight(attributeValues[i]);
+		if (children.length > 0) {
+			// children array, typed arrays, and roughly one hash entry per child
+			w += 80 + children.length * (4 + 4 + 8 + 1 + 1 + 36);
+			for (SectionSnapshot c : children)
+				w += c.weight;
+		}
+		return w;
+	}
+
+	private static long stringWeight(String s) {
+		return (s == null) ? 0 : 40 + s.length();
+	}
+
+	/**
+	 * A 64 bit FNV-1a hash of the element's name, text and attributes, and of its children's hashes in order,
+	 * so two elements with the same hash can be taken to have the same content all the way down.
+	 */
+	private static long contentHash(String name, String text, String[] attributeNames, String[] attributeValues, SectionSnapshot[] children) {
+		long h = hash(0xcbf29ce484222325L, name);
+		h = hash(h, text);
+		for (int i = 0; i < attributeNames.length; i++)
+			h = hash(hash(h, attributeNames[i]), attributeValues[i]);
+		for (SectionSnapshot c : children)
+			h = (h ^ c.hash) * 0x100000001b3L;
+		return h;
+	}
+
+	private static long hash(long h, String s) {
+		if (s == null)
+			return (h ^ 0xff) * 0x100000001b3L;
+		for (int i = 0; i < s.length(); i++)
+			h = (h ^ s.charAt(i)) * 0x100000001b3L;
+		// mark the end of the string, so "ab","c" and "a","bc" differ
+		return (h ^ 0x10000) * 0x100000001b3L;
+	}
+
+
+	/**
+	 * Compile a JDOM element, and all elements beneath it, into a snapshot
+	 * @param e the element to compile
+	 * @return the immutable snapshot of e
+	 */
+	public static SectionSnapshot compile(Element e) {
+		return compile(e, new Symbols(Symbols.dedupValuesByDefault()));
+	}
+
+	@SuppressWarnings("unchecked")
+	static SectionSnapshot compile(Element e, Symbols symbols) {
+		List <Attribute> attributes = e.getAttributes();
+		String[] attributeNames = NO_STRINGS;
+		String[] attributeValues = NO_STRINGS;
+		if (attributes.size() > 0) {
+			attributeNames = new String[attributes.size()];
+			attributeValues = new String[attributes.size()];
+			for (int i = 0; i < attributes.size(); i++) {
+				attributeNames[i] = attributes.get(i).getName();
+				attributeValues[i] = symbols.value(attributes.get(i).getValue());
+			}
+			attributeNames = symbols.attributeNames(attributeNames);
+		}
+
+		List <Element> l = e.getChildren();
+		SectionSnapshot[] children = NO_CHILDREN;
+		if (l.size() > 0) {
+			// getChildren() is a filtered view, where get(i) walks the content from the start - iterate instead
+			children = new SectionSnapshot[l.size()];
+			int i = 0;
+			for (Element child : l)
+				children[i++] = compile(child, symbols);
+		}
+		return new SectionSnapshot(Symbols.name(e.getName()), symbols.value(e.getText()), attributeNames, attributeValues, children);
+	}
+
+
+	/**
+	 * @return the name of the element this snapshot was compiled from
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the text of the element this snapshot was compiled from, as Element.getText() would return it
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the number of attributes on this element
+	 */
+	public int attributeCount() {
+		return attributeNames.length;
+	}
+
+	public String attributeName(int i) {
+		return attributeNames[i];
+	}
+
+	public String attributeValue(int i) {
+		return attributeValues[i];
+	}
+
+	/**
+	 * @return the value of the named attribute of this element, or null if there is no such attribute
+	 */
+	public String getAttributeValue(String attributeName) {
+		for (int i = 0; i < attributeNames.length; i++)
+			if (attributeNames[i].equals(attributeName))
+				return attributeValues[i];
+		return null;
+	}
+
+	/**
+	 * @return the number of child elements (slots) in this snapshot
+	 */
+	public int size() {
+		return children.length;
+	}
+
+	/**
+	 * @return the slot of the first child element named elementName, or -1 if there is none
+	 */
+	public int slotOf(String elementName) {
+		int[] s = slots.get(elementName);
+		return (s == null) ? -1 : s[0];
+	}
+
+	/**
+	 * @return the number of child elements named elementName
+	 */
+	public int countOf(String elementName) {
+		int[] s = slots.get(elementName);
+		return (s == null) ? 0 : s.length;
+	}
+
+	/**
+	 * @return the slot of the i'th child element named elementName (in document order)
+	 */
+	public int slotOf(String elementName, int i) {
+		return slots.get(elementName)[i];
+	}
+
+	/**
+	 * @return the names of the child elements, each name once, in no particular order
+	 */
+	public Set<String> elementNames() {
+		return Collections.unmodifiableSet(slots.keySet());
+	}
+
+	public SectionSnapshot childAt(int slot) {
+		return children[slot];
+	}
+
+	public String textAt(int slot) {
+		return children[slot].text;
+	}
+
+	/**
+	 * @return true if the text in this slot was readable by Integer.parseInt()
+	 */
+	public boolean isInt(int slot) {
+		return (flags[slot] & INT_OK) != 0;
+	}
+
+	public int intAt(int slot) {
+		return intValues[slot];
+	}
+
+	/**
+	 * @return true if the text in this slot was readable by Long.parseLong()
+	 */
+	public boolean isLong(int slot) {
+		return (flags[slot] & LONG_OK) != 0;
+	}
+
+	public long longAt(int slot) {
+		return longValues[slot];
+	}
+
+	/**
+	 * @return the text in this slot, as evaluated by Boolean.parseBoolean()
+	 */
+	public boolean booleanAt(int slot) {
+		return booleanValues[slot];
+	}
+
+
+	/**
+	 * Find the child elements named elementName whose attribute attributeName has the given value.
+	 * The first lookup for an (element, attribute) pair builds an index of every value of that attribute;
+	 * later lookups are a hash lookup in it. The index lives as long as this snapshot, so it is rebuilt only when
+	 * the document is reloaded.
+	 * @return the matching slots in document order, or an empty array. Do not modify the array
+	 */
+	public int[] findSlotsByAttribute(String elementName, String attributeName, String value) {
+		return findSlots(elementName, attributeName, value);
+	}
+
+	/**
+	 * Find the child elements named elementName whose text equals the given text, through an index built on first use
+	 * @return the matching slots in document order, or an empty array. Do not modify the array
+	 */
+	public int[] findSlotsByText(String elementName, String text) {
+		return findSlots(elementName, TEXT_INDEX, text);
+	}
+
+	/**
+	 * Find the child elements named elementName that have a child childName whose text equals the given text,
+	 * e.g. the subsection whose name is zach, through an index built on first use
+	 * @return the matching slots in document order, or an empty array. Do not modify the array
+	 */
+	public int[] findSlotsByChildText(String elementName, String childName, String text) {
+		if (childName == null)
+			throw new IllegalArgumentException("SectionSnapshot: findSlotsByChildText() needs a child name");
+		return findSlots(elementName, childIndexKey(childName), text);
+	}
+
+	/**
+	 * The lookup behind the find___ methods, for callers that have made the index key ahead of time
+	 * @param key an attribute name, textIndexKey() or childIndexKey()
+	 */
+	int[] findSlots(String elementName, String key, String value) {
+		if ((elementName == null) || (key == null) || (value == null))
+			throw new IllegalArgumentException("SectionSnapshot: element name, attribute name and value must not be null, got "+elementName+", "+key+", "+value);
+		int[] s = index(elementName, key).get(value);
+		return (s == null) ? NO_INTS : s;
+	}
+
+	static String textIndexKey() {
+		return TEXT_INDEX;
+	}
+
+	static String childIndexKey(String childName) {
+		return CHILD_INDEX+childName;
+	}
+
+	/**
+	 * Build the index for (elementName, attributeName) now, rather than on the first lookup
+	 * @param attributeName the attribute to index, or null to index the elements' text
+	 */
+	public void buildIndex(String elementName, String attributeName) {
+		if (elementName == null)
+			throw new IllegalArgumentException("SectionSnapshot: buildIndex() needs an element name");
+		index(elementName, (attributeName == null) ? TEXT_INDEX : attributeName);
+	}
+
+	private Map<String,int[]> index(String elementName, String key) {
+		ConcurrentHashMap <String,ConcurrentHashMap<String,Map<String,int[]>>> indexes = this.indexes;
+		if (indexes == null) {
+			synchronized (this) {
+				if (this.indexes == null)
+					this.indexes = new ConcurrentHashMap <String,ConcurrentHashMap<String,Map<String,int[]>>> (4);
+				indexes = this.indexes;
+			}
+		}
+		ConcurrentHashMap <String,Map<String,int[]>> byElement = indexes.get(elementName);
+		if (byElement == null) {
+			byElement = new ConcurrentHashMap <String,Map<String,int[]>> (4);
+			ConcurrentHashMap <String,Map<String,int[]>> raced = indexes.putIfAbsent(elementName, byElement);
+			if (raced != null)
+				byElement = raced;
+		}
+		Map <String,int[]> index = byElement.get(key);
+		if (index == null) {
+			index = makeIndex(elementName, key);
+			Map <String,int[]> raced = byElement.putIfAbsent(key, index);
+			if (raced != null)
+				index = raced;
+		}
+		return index;
+	}
+
+	private Map<String,int[]> makeIndex(String elementName, String key) {
+		int[] s = slots.get(elementName);
+		if (s == null)
+			return NO_SLOTS;
+		// count first, so common values (e.g. thousands of car="Honda") get one array of the right size
+		String[] values = new String[s.length];
+		HashMap <String,int[]> counts = new HashMap <String,int[]> ();
+		for (int i = 0; i < s.length; i++) {
+			values[i] = indexValue(children[s[i]], key);
+			if (values[i] == null)
+				continue;
+			int[] count = counts.get(values[i]);
+			if (count == null)
+				counts.put(values[i], new int[] {1});
+			else
+				count[0]++;
+		}
+		HashMap <String,int[]> index = new HashMap <String,int[]> (counts.size() * 2);
+		for (int i = 0; i < s.length; i++) {
+			if (values[i] == null)
+				continue;
+			int[] found = index.get(values[i]);
+			int[] count = counts.get(values[i]);
+			if (found == null) {
+				found = new int[count[0]];
+				index.put(values[i], found);
+			}
+			found[found.length - count[0]--] = s[i];
+		}
+		return index;
+	}
+
+	/**
+	 * @return the value e is indexed under for the key, or null if it has none
+	 */
+	private static String indexValue(SectionSnapshot e, String key) {
+		if (key == TEXT_INDEX)
+			return e.text;
+		if (key.startsWith(CHILD_INDEX)) {
+			int child = e.slotOf(key.substring(CHILD_INDEX.length()));
+			return (child < 0) ? null : e.textAt(child);
+		}
+		return e.getAttributeValue(key);
+	}
+
+
+	/**
+	 * @return this element's attributes as a snapshot with one child element per attribute, named for the attribute
+	 * and with its value as text, so attribute values can be read like elements (as ConfigPath does for "@name").
+	 * Made on first use and kept.
+	 */
+	SectionSnapshot attributes() {
+		SectionSnapshot a = attributes;
+		if (a == null) {
+			SectionSnapshot[] children = (attributeNames.length == 0) ? NO_CHILDREN : new SectionSnapshot[attributeNames.length];
+			for (int i = 0; i < children.length; i++)
+				children[i] = new SectionSnapshot(attributeNames[i], attributeValues[i], NO_STRINGS, NO_STRINGS, NO_CHILDREN);
+			attributes = a = new SectionSnapshot(name, "", NO_STRINGS, NO_STRINGS, children);
+		}
+		return a;
+	}
+
+	/**
+	 * @return a read-only, thread-safe view of this element with the same get___ methods as ConfigFileReader
+	 */
+	public SectionView view() {
+		SectionView v = view;
+		if (v == null)
+			view = v = new SectionView(this);
+		return v;
+	}
+
+	/**
+	 * @return a hash of this element's name, text, attributes and everything beneath it. Snapshots with
+	 * equal content hashes are treated as identical by SectionDiff and reload()
+	 */
+	public long contentHash() {
+		return hash;
+	}
+
+	/**
+	 * @return the approximate number of bytes of heap held by this snapshot and everything under it
+	 */
+	public long weight() {
+		return weight;
+	}
+
+
+	/**
+	 * Same form as JDOM's Element.toString(), which error messages from the reader have always used
+	 */
+	public String toString() {
+		return "[Element: <"+name+"/>]";
+	}
+
+}
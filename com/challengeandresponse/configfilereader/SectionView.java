@@ -0,0 +1,508 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.*;
+
+/**
+ * A read-only view of one element of a config file - a section, or an element inside one - with the same
+ * get___ methods as ConfigFileReader.
+ *
+ * <p>A view has no cursor and no other mutable state, so, unlike a ConfigFileReader in the middle of a stepInto(),
+ * it can be handed to any number of threads and used by all of them at once without locking. Instead of stepping,
+ * stepInto(elementName) returns a view of each matching child:</p>
+ * <pre>
+ * for (SectionView sub : cfr.getView().stepInto("subsection")) {
+ *	String name = sub.getString("name");
+ *	int age = sub.getInt("age");
+ * }
+ * </pre>
+ * <p>Element names may also be paths, e.g. getInt("subsection[name='zach']/age"); see {@link ConfigPath}.</p>
+ *
+ * @author jim
+ */
+public final class SectionView {
+
+	private final SectionSnapshot snapshot;
+
+	/**
+	 * Views are normally obtained from ConfigFileReader.getView() or SectionSnapshot.view()
+	 */
+	SectionView(SectionSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+
+	/**
+	 * @return the name of the element this is a view of
+	 */
+	public String getName() {
+		return snapshot.getName();
+	}
+
+	/**
+	 * @return the text of the element this is a view of
+	 */
+	public String getText() {
+		return snapshot.getText();
+	}
+
+	/**
+	 * @return the value of the named attribute of the element this is a view of, or null if there is no such attribute
+	 */
+	public String getAttributeValue(String attributeName) {
+		return snapshot.getAttributeValue(attributeName);
+	}
+
+	public SectionSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return a view of each child element named elementName, in document order. The list is unmodifiable
+	 */
+	public List<SectionView> stepInto(String elementName) {
+		if (ConfigPath.isPath(elementName)) {
+			List <SectionView> result = new ArrayList <SectionView> ();
+			for (SectionSnapshot e : ConfigPath.compile(elementName).select(snapshot))
+				result.add(e.view());
+			return Collections.unmodifiableList(result);
+		}
+		int n = count(snapshot,elementName);
+		if (n == 0)
+			return Collections.emptyList();
+		SectionView[] result = new SectionView[n];
+		for (int i = 0; i < n; i++)
+			result[i] = snapshot.childAt(snapshot.slotOf(elementName,i)).view();
+		return Collections.unmodifiableList(Arrays.asList(result));
+	}
+
+
+	/**
+	 * Fill in a new record or POJO from this element's children
+	 * @see ConfigFileReader#bind(Class)
+	 */
+	public <T> T bind(Class<T> type)
+	throws ConfigFileReaderException {
+		return ConfigBinder.of(type).bind(snapshot);
+	}
+
+	/**
+	 * Fill in one new record or POJO from each child element named elementName, in document order
+	 * @see ConfigFileReader#bindAll(String, Class)
+	 */
+	public <T> List<T> bindAll(String elementName, Class<T> type)
+	throws ConfigFileReaderException {
+		ConfigBinder <T> binder = ConfigBinder.of(type);
+		int n = count(snapshot,elementName);
+		ArrayList <T> result = new ArrayList <T> (n);
+		for (int i = 0; i < n; i++)
+			result.add(binder.bind(snapshot.childAt(snapshot.slotOf(elementName,i))));
+		return result;
+	}
+
+
+	/**
+	 * @return the first child element named elementName whose attribute attributeName has the given value, or null if there is none.
+	 * e.g. findByAttribute("client","id","two"). Uses an index built on the first lookup, so repeated lookups are O(1)
+	 */
+	public SectionView findByAttribute(String elementName, String attributeName, String value) {
+		int[] s = snapshot.findSlotsByAttribute(elementName, attributeName, value);
+		return (s.length == 0) ? null : snapshot.childAt(s[0]).view();
+	}
+
+	/**
+	 * @return every child element named elementName whose attribute attributeName has the given value, in document order
+	 */
+	public List<SectionView> findAllByAttribute(String elementName, String attributeName, String value) {
+		return views(snapshot.findSlotsByAttribute(elementName, attributeName, value));
+	}
+
+	/**
+	 * @return the first child element named elementName whose text is the given text, or null if there is none
+	 */
+	public SectionView findByText(String elementName, String text) {
+		int[] s = snapshot.findSlotsByText(elementName, text);
+		return (s.length == 0) ? null : snapshot.childAt(s[0]).view();
+	}
+
+	/**
+	 * @return every child element named elementName whose text is the given text, in document order
+	 */
+	public List<SectionView> findAllByText(String elementName, String text) {
+		return views(snapshot.findSlotsByText(elementName, text));
+	}
+
+	private List<SectionView> views(int[] slots) {
+		if (slots.length == 0)
+			return Collections.emptyList();
+		SectionView[] result = new SectionView[slots.length];
+		for (int i = 0; i < slots.length; i++)
+			result[i] = snapshot.childAt(slots[i]).view();
+		return Collections.unmodifiableList(Arrays.asList(result));
+	}
+
+
+	/**
+	 * @return elementName compiled, if it is a path, or null for a plain element name
+	 */
+	private static ConfigPath path(String elementName) {
+		return ConfigPath.isPath(elementName) ? ConfigPath.compile(elementName) : null;
+	}
+
+	/**
+	 * @return the element to look the name up in: this one, or for a path the one holding its first match
+	 */
+	private SectionSnapshot target(ConfigPath path) {
+		return (path == null) ? snapshot : path.parentOf(snapshot);
+	}
+
+	/**
+	 * slotOf() and countOf(), counted by ConfigMetrics when metrics are on. path is from path(elementName), and se from target(path)
+	 */
+	private static int slot(SectionSnapshot se, ConfigPath path, String elementName) {
+		int slot;
+		if (path == null)
+			slot = se.slotOf(elementName);
+		else
+			slot = (se == ConfigPath.NOWHERE) ? -1 : path.slotIn(se);
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().read(se.getName(), elementName, slot >= 0);
+		return slot;
+	}
+
+	private static int count(SectionSnapshot se, String elementName) {
+		int n = se.countOf(elementName);
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().read(se.getName(), elementName, n > 0);
+		return n;
+	}
+
+	/**
+	 * Builds the message for a failed read, in the same form as when every read reparsed the element text
+	 */
+	static String describeFailure(SectionSnapshot se, int slot, String elementName, boolean asLong) {
+		if (slot < 0)
+			return "ConfigFileReader:Element not found:"+elementName;
+		try {
+			if (asLong)
+				Long.parseLong(se.textAt(slot));
+			else
+				Integer.parseInt(se.textAt(slot));
+		}
+		catch (NumberFormatException nfe) {
+			return nfe.getMessage();
+		}
+		return "";
+	}
+	
+
+	/**
+	 * Retrieve an integer value from this element
+	 * @see ConfigFileReader#getInt(int, boolean, String)
+	 */
+	public int getInt(int defaultValue, boolean useDefault, String elementName)
+	throws ConfigFileReaderException, ElementNotFoundException {
+		if (useDefault)
+			return getIntOrDefault(elementName,defaultValue);
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if ((slot >= 0) && se.isInt(slot))
+			return se.intAt(slot);
+		if (ConfigMetrics.enabled && (slot >= 0))
+			ConfigMetrics.getInstance().invalid();
+		throw new ConfigFileReaderException("ConfigFileReader:Exception reading integer from config file: "+describeFailure(se,slot,elementName,false));
+	}
+
+	public int getInt(String elementName)
+	throws ConfigFileReaderException, ElementNotFoundException {
+		return getInt(0,false,elementName);
+	}
+	
+	
+	/**
+	 * Retrieve a long value from this element
+	 * @see ConfigFileReader#getLong(long, boolean, String)
+	 */
+	public long getLong(long defaultValue, boolean useDefault, String elementName)
+	throws ConfigFileReaderException, ElementNotFoundException {
+		if (useDefault)
+			return getLongOrDefault(elementName,defaultValue);
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if ((slot >= 0) && se.isLong(slot))
+			return se.longAt(slot);
+		if (ConfigMetrics.enabled && (slot >= 0))
+			ConfigMetrics.getInstance().invalid();
+		throw new ConfigFileReaderException("ConfigFileReader:Exception reading long from config file: "+describeFailure(se,slot,elementName,true));
+	}
+	
+	public long getLong(String elementName)
+	throws ConfigFileReaderException, ElementNotFoundException {
+		return getLong(0L,false,elementName);
+	}
+
+
+	/**
+	 * Retrieve a boolean value from this element
+	 * @see ConfigFileReader#getBoolean(boolean, boolean, String)
+	 */
+	public boolean getBoolean(boolean defaultValue, boolean useDefault, String elementName)
+	throws ConfigFileReaderException, ElementNotFoundException {
+		if (useDefault)
+			return getBooleanOrDefault(elementName,defaultValue);
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if (slot >= 0)
+			return se.booleanAt(slot);
+		else
+			throw new ConfigFileReaderException("ConfigFileReader:Exception reading integer from config file: "+describeFailure(se,slot,elementName,false));
+	}
+
+	public boolean getBoolean(String elementName)
+	throws ConfigFileReaderException, ElementNotFoundException {
+		return getBoolean(false,false,elementName);
+	}
+
+		
+	/**
+	 * Retrieve a String value from this element
+	 * @see ConfigFileReader#getString(String, boolean, String)
+	 */
+	public String getString(String defaultValue, boolean useDefault, String elementName)
+	throws ConfigFileReaderException, ElementNotFoundException {
+		if (useDefault)
+			return getStringOrDefault(elementName,defaultValue);
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if (slot >= 0)
+			return se.textAt(slot);
+		else
+			throw new ConfigFileReaderException("ConfigFileReader:Exception reading string from config file: "+describeFailure(se,slot,elementName,false));
+	}
+	
+	public String getString(String elementName)
+	throws ConfigFileReaderException, ElementNotFoundException {
+		return getString("",false,elementName);
+	}
+
+
+	/*
+	 * Lookups that never throw. Nothing is allocated to report a missing or unreadable element:
+	 * the ___OrDefault methods return the default, and the find___ methods return an empty Optional.
+	 */
+
+	/**
+	 * @return the integer value of the element, or defaultValue if it is missing or not an integer
+	 */
+	public int getIntOrDefault(String elementName, int defaultValue) {
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if ((slot >= 0) && se.isInt(slot))
+			return se.intAt(slot);
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().defaulted(slot >= 0);
+		return defaultValue;
+	}
+
+	/**
+	 * @return the long value of the element, or defaultValue if it is missing or not a long
+	 */
+	public long getLongOrDefault(String elementName, long defaultValue) {
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if ((slot >= 0) && se.isLong(slot))
+			return se.longAt(slot);
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().defaulted(slot >= 0);
+		return defaultValue;
+	}
+
+	/**
+	 * @return the boolean value of the element (per Boolean.parseBoolean), or defaultValue if it is missing
+	 */
+	public boolean getBooleanOrDefault(String elementName, boolean defaultValue) {
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if (slot >= 0)
+			return se.booleanAt(slot);
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().defaulted(false);
+		return defaultValue;
+	}
+
+	/**
+	 * @return the text of the element, or defaultValue if it is missing
+	 */
+	public String getStringOrDefault(String elementName, String defaultValue) {
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if (slot >= 0)
+			return se.textAt(slot);
+		if (ConfigMetrics.enabled)
+			ConfigMetrics.getInstance().defaulted(false);
+		return defaultValue;
+	}
+
+	/**
+	 * @return the integer value of the element, or an empty OptionalInt if it is missing or not an integer
+	 */
+	public OptionalInt findInt(String elementName) {
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if ((slot >= 0) && se.isInt(slot))
+			return OptionalInt.of(se.intAt(slot));
+		if (ConfigMetrics.enabled && (slot >= 0))
+			ConfigMetrics.getInstance().invalid();
+		return OptionalInt.empty();
+	}
+
+	/**
+	 * @return the long value of the element, or an empty OptionalLong if it is missing or not a long
+	 */
+	public OptionalLong findLong(String elementName) {
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		if ((slot >= 0) && se.isLong(slot))
+			return OptionalLong.of(se.longAt(slot));
+		if (ConfigMetrics.enabled && (slot >= 0))
+			ConfigMetrics.getInstance().invalid();
+		return OptionalLong.empty();
+	}
+
+	/**
+	 * @return the boolean value of the element, or an empty Optional if it is missing
+	 */
+	public Optional<Boolean> findBoolean(String elementName) {
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		return (slot >= 0) ? Optional.of(Boolean.valueOf(se.booleanAt(slot))) : Optional.<Boolean>empty();
+	}
+
+	/**
+	 * @return the text of the element, or an empty Optional if it is missing
+	 */
+	public Optional<String> findString(String elementName) {
+		ConfigPath path = path(elementName);
+		SectionSnapshot se = target(path);
+		int slot = slot(se,path,elementName);
+		return (slot >= 0) ? Optional.of(se.textAt(slot)) : Optional.<String>empty();
+	}
+
+
+	/**
+	 * Visit each child element named elementName, in document order, without building a collection of them.
+	 * The entries are the section's own compiled elements, so nothing is copied or allocated per element.
+	 * @return the number of elements visited
+	 */
+	public int forEach(String elementName, ElementVisitor visitor) {
+		SectionSnapshot se = snapshot;
+		int n = count(se,elementName);
+		for (int i = 0; i < n; i++) {
+			if (! visitor.visit(se.childAt(se.slotOf(elementName,i))))
+				return i+1;
+		}
+		return n;
+	}
+
+	/**
+	 * @return a lazy stream over the child elements named elementName, in document order. Nothing is copied;
+	 * the entries are immutable and may be kept.
+	 */
+	public Stream<ConfigEntry> stream(final String elementName) {
+		final SectionSnapshot se = snapshot;
+		return IntStream.range(0, count(se,elementName)).mapToObj(new IntFunction<ConfigEntry>() {
+			public ConfigEntry apply(int i) {
+				return se.childAt(se.slotOf(elementName,i));
+			}
+		});
+	}
+
+
+	/**
+	 * Retrieve many String values from this element
+	 * @see ConfigFileReader#getList(String)
+	 */
+	public List<String> getList(String elementName)
+	throws ConfigFileReaderException {
+		if (ConfigPath.isPath(elementName)) {
+			List <SectionSnapshot> matches = ConfigPath.compile(elementName).select(snapshot);
+			ArrayList <String> result = new ArrayList <String> (matches.size());
+			for (SectionSnapshot e : matches)
+				result.add(e.getText());
+			return result;
+		}
+		SectionSnapshot se = snapshot;
+		int n = count(se,elementName);
+		ArrayList <String> result = new ArrayList <String> (n);
+		for (int i = 0; i < n; i++)
+			result.add(se.textAt(se.slotOf(elementName,i)));
+		return result;
+	}
+
+
+	/**
+	 * Retrieve a mapping of attribute to element value from many entries in this element
+	 * @see ConfigFileReader#getMap(String, String, boolean)
+	 */
+	public HashMap<String,String> getMap(String elementName, String attributeName, boolean continueIfPossible)
+	throws ConfigFileReaderException {
+		SectionSnapshot se = snapshot;
+		int n = count(se,elementName);
+		HashMap <String,String> result = new HashMap <String,String> ();
+		for (int i = 0; i < n; i++) {
+			SectionSnapshot e = se.childAt(se.slotOf(elementName,i));
+			String key = e.getAttributeValue(attributeName);
+			if (key == null) {
+				if (continueIfPossible)
+					continue;
+				else
+					throw new ConfigFileReaderException("ConfigFileReader:Exception reading map from config file: "+"Element "+e.toString()+" lacks an attribute '"+attributeName+"'");
+			}
+			result.put(key,e.getText());
+		}
+		return result;
+	}
+
+	/**
+	 * Retrieve each element with the given name, and all its attributes, from this element
+	 * @see ConfigFileReader#getMaps(String)
+	 */
+	public HashMap<String,ArrayList<HashMap<String,String>>> getMaps(String elementName)
+	throws ConfigFileReaderException {
+		SectionSnapshot se = snapshot;
+		int n = count(se,elementName);
+		HashMap <String,ArrayList<HashMap<String,String>>> result = new HashMap <String,ArrayList<HashMap<String,String>>> ();
+		for (int i = 0; i < n; i++) {
+			SectionSnapshot e = se.childAt(se.slotOf(elementName,i));
+			String key = e.getText();
+			// build the table of attributes
+			HashMap <String,String> resultAttributes = new HashMap<String,String>();
+			for (int a = 0; a < e.attributeCount(); a++) {
+				resultAttributes.put(e.attributeName(a),e.attributeValue(a));
+			}
+			if (result.containsKey(key)) {
+				ArrayList <HashMap<String,String>> al = result.get(key);
+				al.add(resultAttributes);
+			}
+			else {
+				ArrayList <HashMap<String,String>> al = new ArrayList<HashMap<String,String>>();
+				al.add(resultAttributes);
+				result.put(key,al);
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.ArrayList;
+
+/**
+ * Builds a SectionSnapshot from a stream of start-element, text and end-element events, for
+ * loaders that parse the file themselves rather than going through a JDOM Document.
+ *
+ * <p>Text is accumulated the same way Element.getText() would report it: all character
+ * data directly inside the element, not including the text of nested elements.</p>
+ *
+ * @author jim
+ */
+final class SnapshotBuilder {
+
+	private static final class Frame {
+		final String name;
+		final String[] attributeNames;
+		final String[] attributeValues;
+		String text = "";
+		StringBuilder moreText = null;
+		ArrayList <SectionSnapshot> children = null;
+
+		Frame(String name, String[] attributeNames, String[] attributeValues) {
+			this.name = name;
+			this.attributeNames = attributeNames;
+			this.attributeValues = attributeValues;
+		}
+	}
+
+	private final ArrayList <Frame> stack = new ArrayList <Frame> ();
+	private final Symbols symbols;
+	private SectionSnapshot result = null;
+
+
+	SnapshotBuilder(Symbols symbols) {
+		this.symbols = symbols;
+	}
+
+
+	/**
+	 * Open a new element. The attribute arrays are kept, not copied, and their strings may be replaced by shared copies.
+	 */
+	void startElement(String name, String[] attributeNames, String[] attributeValues) {
+		for (int i = 0; i < attributeValues.length; i++)
+			attributeValues[i] = symbols.value(attributeValues[i]);
+		stack.add(new Frame(Symbols.name(name), symbols.attributeNames(attributeNames), attributeValues));
+	}
+
+	void text(String s) {
+		Frame f = stack.get(stack.size()-1);
+		if (f.moreText != null)
+			f.moreText.append(s);
+		else if (f.text.length() == 0)
+			f.text = s;
+		else {
+			f.moreText = new StringBuilder(f.text).append(s);
+		}
+	}
+
+	/**
+	 * Close the innermost open element
+	 * @return the snapshot of the element just closed
+	 */
+	SectionSnapshot endElement() {
+		Frame f = stack.remove(stack.size()-1);
+		String text = symbols.value((f.moreText != null) ? f.moreText.toString() : f.text);
+		SectionSnapshot[] children = (f.children == null) ? SectionSnapshot.NO_CHILDREN : f.children.toArray(new SectionSnapshot[f.children.size()]);
+		SectionSnapshot ss = new SectionSnapshot(f.name, text, f.attributeNames, f.attributeValues, children);
+		if (stack.isEmpty())
+			result = ss;
+		else {
+			Frame parent = stack.get(stack.size()-1);
+			if (parent.children == null)
+				parent.children = new ArrayList <SectionSnapshot> ();
+			parent.children.add(ss);
+		}
+		return ss;
+	}
+
+	/**
+	 * @return the depth of the element being built - 0 when nothing is open
+	 */
+	int depth() {
+		return stack.size();
+	}
+
+	/**
+	 * @return the outermost element, once it has been closed, or null before then
+	 */
+	SectionSnapshot result() {
+		return result;
+	}
+
+}
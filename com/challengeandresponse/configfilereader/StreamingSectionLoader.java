@@ -0,0 +1,303 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.*;
+
+import javax.xml.stream.*;
+
+/**
+ * Loads a section by streaming through the file with StAX, rather than building a DOM of the whole thing.
+ * Sections other than the one requested are passed over without creating any nodes, and the requested
+ * section is compiled straight into a SectionSnapshot. The scan stops as soon as the section has been read.
+ *
+ * <p>Use this for large shared config files where each component only wants its own section:<br />
+ * <code>
+ * ConfigFileReader cfr = new ConfigFileReader(f,"section1",new StreamingSectionLoader());
+ * </code></p>
+ *
+ * @author jim
+ */
+public class StreamingSectionLoader
+implements SectionLoader {
+
+	private final boolean dedupValues;
+
+	private static final XMLInputFactory XIF = XMLInputFactory.newInstance();
+	static {
+		XIF.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		XIF.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+	}
+
+	public StreamingSectionLoader() {
+		this(Symbols.dedupValuesByDefault());
+	}
+
+	/**
+	 * @param dedupValues true to share one copy of each distinct element text and attribute value within a section,
+	 * which saves memory on sections where many elements repeat the same values
+	 */
+	public StreamingSectionLoader(boolean dedupValues) {
+		this.dedupValues = dedupValues;
+	}
+
+
+	public SectionSnapshot load(File configFile, String sectionName)
+	throws IOException, ElementNotFoundException {
+		long start = System.nanoTime();
+		InputStream in = new BufferedInputStream(new FileInputStream(configFile), 65536);
+		XMLStreamReader xsr = null;
+		try {
+			xsr = createReader(in);
+			if (! seekSection(xsr, sectionName))
+				throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+			SectionSnapshot se = readElement(xsr, new Symbols(dedupValues));
+			// only as far as the end of the section, which is all this loader reads
+			if (ConfigMetrics.enabled)
+				ConfigMetrics.getInstance().parsed(configFile, System.nanoTime() - start);
+			return se;
+		}
+		catch (XMLStreamException xse) {
+			if (ConfigMetrics.enabled)
+				ConfigMetrics.getInstance().parseFailed();
+			throw new IOException("ConfigFileReader:XML exception building configuration from file: "+configFile+" "+xse.getMessage());
+		}
+		finally {
+			close(xsr, in);
+		}
+	}
+
+
+
+	/**
+	 * Visit each element named elementName directly inside the section, straight from the file. Neither the section
+	 * nor the document is ever held in memory - only the element being visited - so this suits sections too large
+	 * to load. The entry handed to the visitor is reused for every element. Its text is the element's own text;
+	 * any elements nested inside it are skipped.
+	 *
+	 * @return the number of elements visited
+	 */
+	public int forEach(File configFile, String sectionName, String elementName, ElementVisitor visitor)
+	throws IOException, ElementNotFoundException {
+		InputStream in = new BufferedInputStream(new FileInputStream(configFile), 65536);
+		XMLStreamReader xsr = null;
+		try {
+			xsr = createReader(in);
+			if (! seekSection(xsr, sectionName))
+				throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+			StreamingEntry entry = new StreamingEntry();
+			int count = 0;
+			while (nextElement(xsr, elementName, entry)) {
+				count++;
+				if (! visitor.visit(entry))
+					break;
+			}
+			return count;
+		}
+		catch (XMLStreamException xse) {
+			if (ConfigMetrics.enabled)
+				ConfigMetrics.getInstance().parseFailed();
+			throw new IOException("ConfigFileReader:XML exception building configuration from file: "+configFile+" "+xse.getMessage());
+		}
+		finally {
+			close(xsr, in);
+		}
+	}
+
+	/**
+	 * Read forward, within the section the reader is in, to the next child of the section named elementName,
+	 * and load it into the entry. On return the reader is positioned on that element's end tag.
+	 * @return false when the end of the section is reached
+	 */
+	static boolean nextElement(XMLStreamReader xsr, String elementName, StreamingEntry entry)
+	throws XMLStreamException {
+		if (! seekChild(xsr, elementName))
+			return false;
+		entry.read(xsr);
+		return true;
+	}
+
+	/**
+	 * Read forward, within the section the reader is in, to the start tag of the next child of the section named elementName
+	 * @return false when the end of the section is reached
+	 */
+	static boolean seekChild(XMLStreamReader xsr, String elementName)
+	throws XMLStreamException {
+		int depth = 0;
+		while (xsr.hasNext()) {
+			int event = xsr.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if ((depth == 0) && elementName.equals(xsr.getLocalName()))
+					return true;
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				if (depth == 0)
+					return false; // end of the section
+				depth--;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * A reusable entry, refilled for each element read from the stream
+	 */
+	static final class StreamingEntry
+	implements ConfigEntry {
+		private String name;
+		private final StringBuilder text = new StringBuilder();
+		private String textString = null;
+		private String[] attributeNames = new String[4];
+		private String[] attributeValues = new String[4];
+		private int attributeCount;
+
+		/**
+		 * Load the element the reader is positioned on, leaving the reader on its end tag
+		 */
+		void read(XMLStreamReader xsr)
+		throws XMLStreamException {
+			name = xsr.getLocalName();
+			attributeCount = xsr.getAttributeCount();
+			if (attributeCount > attributeNames.length) {
+				attributeNames = new String[attributeCount];
+				attributeValues = new String[attributeCount];
+			}
+			for (int i = 0; i < attributeCount; i++) {
+				attributeNames[i] = xsr.getAttributeLocalName(i);
+				attributeValues[i] = xsr.getAttributeValue(i);
+			}
+			text.setLength(0);
+			textString = null;
+			int depth = 0;
+			while (true) {
+				int event = xsr.next();
+				if (event == XMLStreamConstants.START_ELEMENT)
+					depth++;
+				else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth == 0)
+						return;
+					depth--;
+				}
+				else if ((depth == 0) && ((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA) || (event == XMLStreamConstants.SPACE)))
+					text.append(xsr.getTextCharacters(), xsr.getTextStart(), xsr.getTextLength());
+			}
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getText() {
+			if (textString == null)
+				textString = text.toString();
+			return textString;
+		}
+
+		public int attributeCount() {
+			return attributeCount;
+		}
+
+		public String attributeName(int i) {
+			if (i >= attributeCount)
+				throw new IndexOutOfBoundsException("attribute "+i+" of "+attributeCount);
+			return attributeNames[i];
+		}
+
+		public String attributeValue(int i) {
+			if (i >= attributeCount)
+				throw new IndexOutOfBoundsException("attribute "+i+" of "+attributeCount);
+			return attributeValues[i];
+		}
+
+		public String getAttributeValue(String attributeName) {
+			for (int i = 0; i < attributeCount; i++)
+				if (attributeNames[i].equals(attributeName))
+					return attributeValues[i];
+			return null;
+		}
+	}
+
+	static XMLStreamReader createReader(InputStream in)
+	throws XMLStreamException {
+		synchronized (XIF) {
+			return XIF.createXMLStreamReader(in);
+		}
+	}
+
+	static void close(XMLStreamReader xsr, InputStream in) {
+		try {
+			if (xsr != null)
+				xsr.close();
+		}
+		catch (XMLStreamException xse) {
+		}
+		try {
+			in.close();
+		}
+		catch (IOException ioe) {
+		}
+	}
+
+	/**
+	 * Advance the reader to the start of the first child of the root element named sectionName, skipping everything before it.
+	 * @return true if the reader is positioned on the section's start tag, false if the document has no such section
+	 */
+	static boolean seekSection(XMLStreamReader xsr, String sectionName)
+	throws XMLStreamException {
+		int depth = 0;
+		while (xsr.hasNext()) {
+			int event = xsr.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+				if ((depth == 2) && sectionName.equals(xsr.getLocalName()))
+					return true;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Read the element the reader is positioned on, and everything beneath it, into a snapshot.
+	 * On return the reader is positioned on the element's end tag.
+	 */
+	static SectionSnapshot readElement(XMLStreamReader xsr, Symbols symbols)
+	throws XMLStreamException {
+		SnapshotBuilder sb = new SnapshotBuilder(symbols);
+		startElement(sb, xsr);
+		while (sb.depth() > 0) {
+			switch (xsr.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				startElement(sb, xsr);
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				sb.text(xsr.getText());
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				sb.endElement();
+				break;
+			}
+		}
+		return sb.result();
+	}
+
+	private static void startElement(SnapshotBuilder sb, XMLStreamReader xsr) {
+		int n = xsr.getAttributeCount();
+		String[] names = SectionSnapshot.NO_STRINGS;
+		String[] values = SectionSnapshot.NO_STRINGS;
+		if (n > 0) {
+			names = new String[n];
+			values = new String[n];
+			for (int i = 0; i < n; i++) {
+				names[i] = xsr.getAttributeLocalName(i);
+				values[i] = xsr.getAttributeValue(i);
+			}
+		}
+		sb.startElement(xsr.getLocalName(), names, values);
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.challengeandresponse.configfilereader;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Deduplicates the strings of a section as it is compiled, so that a large section of repeated elements holds
+ * each element name, attribute name and set of attribute names once rather than once per element.
+ *
+ * <p>Element and attribute names go into one symbol table shared by the whole process, which also keeps them shared
+ * across reloads. It is capped at MAX_NAMES entries, after which new names are simply not shared. Elements with the
+ * same attribute names, in the same order, share one attribute name array.</p>
+ *
+ * <p>Values (element text and attribute values) are only deduplicated if asked for, since they are often all
+ * different. When they are, it is done with a table that lasts only as long as one load.</p>
+ *
+ * @author jim
+ */
+final class Symbols {
+
+	/**
+	 * System property to turn value deduplication on for loaders that aren't told either way
+	 */
+	static final String DEDUP_VALUES_PROPERTY = "com.challengeandresponse.configfilereader.dedupValues";
+	static final int MAX_NAMES = 65536;
+
+	private static final ConcurrentHashMap <String,String> NAMES = new ConcurrentHashMap <String,String> ();
+
+	private final HashMap <String,String> values;	// null unless deduplicating values
+	private final HashMap <List<String>,String[]> attributeNameSets = new HashMap <List<String>,String[]> ();
+
+
+	/**
+	 * @return true if values should be deduplicated by default, per DEDUP_VALUES_PROPERTY
+	 */
+	static boolean dedupValuesByDefault() {
+		return Boolean.getBoolean(DEDUP_VALUES_PROPERTY);
+	}
+
+	Symbols(boolean dedupValues) {
+		values = dedupValues ? new HashMap <String,String> () : null;
+	}
+
+
+	/**
+	 * @return the shared copy of an element or attribute name
+	 */
+	static String name(String s) {
+		String shared = NAMES.get(s);
+		if (shared != null)
+			return shared;
+		if (NAMES.size() >= MAX_NAMES)
+			return s;
+		shared = NAMES.putIfAbsent(s, s);
+		return (shared == null) ? s : shared;
+	}
+
+	/**
+	 * @return an array holding the shared copies of the names, shared with any earlier array of the same names.
+	 * The array passed in may be modified
+	 */
+	String[] attributeNames(String[] names) {
+		if (names.length == 0)
+			return SectionSnapshot.NO_STRINGS;
+		for (int i = 0; i < names.length; i++)
+			names[i] = name(names[i]);
+		List <String> key = Arrays.asList(names);
+		String[] shared = attributeNameSets.get(key);
+		if (shared != null)
+			return shared;
+		attributeNameSets.put(key, names);
+		return names;
+	}
+
+	/**
+	 * @return the first copy of the value seen in this load, if deduplicating values; otherwise s itself
+	 */
+	String value(String s) {
+		if (s.isEmpty())
+			return "";
+		if (values == null)
+			return s;
+		String shared = values.get(s);
+		if (shared != null)
+			return shared;
+		values.put(s, s);
+		return s;
+	}
+
+}
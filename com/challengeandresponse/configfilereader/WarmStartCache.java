@@ -0,0 +1,222 @@
+package com.challengeandresponse.configfilereader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps compiled images of config files in a local directory, so a process restarted on an unchanged file maps
+ * the image it saved last time instead of parsing the XML again.
+ *
+ * <p>Images are in the ConfigImage format (the same as ImageSectionLoader uses) and are named for the SHA-256 of
+ * the file's canonical path and the CRC32 and length of its contents. On each load the XML is checksummed in one streaming pass - much cheaper
+ * than parsing it - and if an image for those contents is there, it is memory-mapped and the section decoded from it.
+ * Otherwise, or if the image is damaged or was written by another version of this library, the XML is parsed and
+ * a new image written, replacing the file's older images. Within a process, the checksum of a file is kept until
+ * its modification time or size changes, so loading several sections of it checksums it once.</p>
+ *
+ * <pre>
+ * WarmStartCache warm = new WarmStartCache(new File("/var/cache/myapp"));
+ * ConfigFileReader cfr = new ConfigFileReader(f,"section1",warm);
+ * System.out.println(warm);	// hits, misses and time saved
+ * </pre>
+ *
+ * @author jim
+ */
+public class WarmStartCache
+implements SectionLoader {
+
+	private static final String SUFFIX = ".cfri";
+
+	/**
+	 * The image in use for one file, while the file is unchanged
+	 */
+	private static final class Known {
+		final long lastModified;
+		final long length;
+		final long checksum;
+		final ConfigImage image;
+
+		Known(long lastModified, long length, long checksum, ConfigImage image) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.checksum = checksum;
+			this.image = image;
+		}
+	}
+
+	private final File directory;
+	private final ConcurrentHashMap <String,Known> known = new ConcurrentHashMap <String,Known> ();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong rebuilds = new AtomicLong();
+	private final AtomicLong savedNanos = new AtomicLong();
+
+
+	/**
+	 * @param directory where the images are kept. It is created if need be
+	 */
+	public WarmStartCache(File directory) {
+		this.directory = directory;
+	}
+
+
+	public SectionSnapshot load(File configFile, String sectionName)
+	throws IOException, ElementNotFoundException {
+		long start = System.nanoTime();
+		File f = configFile.getCanonicalFile();
+		String path = f.getPath();
+		long lastModified = f.lastModified();
+		long length = f.length();
+
+		Known k = known.get(path);
+		if ((k == null) || (k.lastModified != lastModified) || (k.length != length)) {
+			long checksum = ConfigImage.checksum(f);
+			File imageFile = imageFile(path, checksum, length);
+			k = null;
+			if (imageFile.exists()) {
+				try {
+					k = new Known(lastModified, length, checksum, ConfigImage.map(imageFile));
+				}
+				catch (IOException ioe) {
+					// damaged, or from another version - parse instead
+					rebuilds.incrementAndGet();
+				}
+			}
+			if (k == null)
+				return compile(f, path, lastModified, length, checksum, sectionName);
+			known.put(path, k);
+		}
+
+		SectionSnapshot se;
+		try {
+			se = k.image.readSection(sectionName);
+		}
+		catch (IOException ioe) {
+			rebuilds.incrementAndGet();
+			return compile(f, path, lastModified, length, k.checksum, sectionName);
+		}
+		if (se == null)
+			throw new ElementNotFoundException("Element:'"+sectionName+"' does not exist.");
+		hits.incrementAndGet();
+		savedNanos.addAndGet(k.image.getParseNanos() - (System.nanoTime() - start));
+		return se;
+	}
+
+	/**
+	 * Parse the file, save its image in place of any older ones, and return the section from the parse
+	 * @param checksum of the file as it was before the parse
+	 */
+	private SectionSnapshot compile(File f, String path, long lastModified, long length, long checksum, String sectionName)
+	throws IOException, ElementNotFoundException {
+		misses.incrementAndGet();
+		known.remove(path);
+		long start = System.nanoTime();
+		SectionSnapshot document = new DOMSectionLoader().loadDocument(f);
+		long parseNanos = System.nanoTime() - start;
+		// if the file changed while we parsed, don't save an image that may not match the checksum in its name
+		if ((f.lastModified() == lastModified) && (f.length() == length)) {
+			try {
+				directory.mkdirs();
+				removeImages(path);
+				File imageFile = imageFile(path, checksum, length);
+				ConfigImageCompiler.write(ConfigImage.write(document, checksum, length, parseNanos), imageFile);
+				known.put(path, new Known(lastModified, length, checksum, ConfigImage.map(imageFile)));
+			}
+			catch (IOException ioe) {
+				// the cache is only an optimization; a directory we can't write to mustn't stop the load
+			}
+		}
+		return DOMSectionLoader.section(document, sectionName);
+	}
+
+	private File imageFile(String path, long checksum, long length) {
+		return new File(directory, prefix(path)+Long.toHexString(checksum)+"-"+Long.toHexString(length)+SUFFIX);
+	}
+
+	/**
+	 * @return the start of the names of the path's images. A full hash, so no two files can share one and remove
+	 * each other's images
+	 */
+	private static String prefix(String path) {
+		byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(path.getBytes(StandardCharsets.UTF_8));
+		}
+		catch (NoSuchAlgorithmException nsae) {
+			// every Java platform is required to have SHA-256
+			throw new IllegalStateException("WarmStartCache: SHA-256 is not available", nsae);
+		}
+		StringBuilder sb = new StringBuilder(hash.length * 2 + 1);
+		for (byte b : hash)
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return sb.append('-').toString();
+	}
+
+	/**
+	 * Delete the images of earlier versions of the file
+	 */
+	private void removeImages(String path) {
+		final String prefix = prefix(path);
+		File[] old = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix) && name.endsWith(SUFFIX);
+			}
+		});
+		if (old != null)
+			for (File f : old)
+				f.delete();
+	}
+
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return the number of loads answered from an image
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of loads that parsed the XML, including those whose image was unusable
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of images found damaged or from another version, and replaced
+	 */
+	public long getRebuildCount() {
+		return rebuilds.get();
+	}
+
+	/**
+	 * @return hits / (hits + misses), or 0 before the first load
+	 */
+	public double getHitRate() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return (total == 0) ? 0 : (double) h / total;
+	}
+
+	/**
+	 * @return the time saved by hits, in nanoseconds: for each hit, how long the file took to parse when its image
+	 * was written, less how long the hit took
+	 */
+	public long getTimeSavedNanos() {
+		return savedNanos.get();
+	}
+
+	public String toString() {
+		return "WarmStartCache: hits:"+hits.get()+" misses:"+misses.get()+" rebuilds:"+rebuilds.get()+" saved:"+(savedNanos.get() / 1000000L)+"ms";
+	}
+
+}